@@ -0,0 +1,330 @@
+package be.kdg.distrib.codec;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes an {@link ObjectCodec} for every class used by an interface marked {@link Remote}.
+ * A codec reads fields with their getter, or directly when the field is not private, and recreates
+ * objects with the no-arg constructor and setters, or with a constructor that takes every field by name.
+ * Classes that allow neither, or that have static fields, get no codec and get one at runtime instead.
+ * <p>
+ * The processor is registered as a service, so compiling against this library runs it.
+ */
+@SupportedAnnotationTypes("be.kdg.distrib.codec.Remote")
+public class CodecProcessor extends AbstractProcessor {
+    private final Set<String> visited = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (Element element : round.getElementsAnnotatedWith(Remote.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@Remote only applies to interfaces");
+                continue;
+            }
+            visitInterface((TypeElement) element);
+        }
+        return true;
+    }
+
+    // -- DISCOVERY ------------------------
+    private void visitInterface(TypeElement type) {
+        if (!this.visited.add(type.getQualifiedName().toString())) return;
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            visit(method.getReturnType());
+            for (VariableElement parameter : method.getParameters()) {
+                visit(parameter.asType());
+            }
+        }
+        // interfaces that are extended are part of the remote interface
+        for (TypeMirror parent : type.getInterfaces()) {
+            visit(parent);
+        }
+    }
+
+    private void visit(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED || isSimple(type)) return;
+
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String name = element.getQualifiedName().toString();
+        if (name.startsWith("java.") || name.startsWith("javax.")) return;
+
+        if (element.getKind() == ElementKind.INTERFACE) {
+            // interfaces are decoded as views, the classes they return are parsed
+            visitInterface(element);
+        } else if (element.getKind() == ElementKind.CLASS && this.visited.add(name)) {
+            generate(element);
+        }
+    }
+
+    // -- GENERATION -----------------------
+    private void generate(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+                || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            note(type, "no codec for " + type + ", it can not be created from another class");
+            return;
+        }
+
+        List<VariableElement> fields = ElementFilter.fieldsIn(type.getEnclosedElements());
+        List<String> getters = new ArrayList<>();
+        for (VariableElement field : fields) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                note(type, "no codec for " + type + ", reflection also encodes its static fields");
+                return;
+            }
+            String getter = getter(type, field);
+            if (getter == null) {
+                note(type, "no codec for " + type + ", field " + field.getSimpleName() + " can not be read");
+                return;
+            }
+            getters.add(getter);
+            visit(field.asType());
+        }
+
+        List<String> setters = setters(type, fields);
+        ExecutableElement constructor = setters == null ? fieldConstructor(type, fields) : null;
+        if (setters == null && constructor == null) {
+            note(type, "no codec for " + type + ", it can not be created with its fields");
+            return;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String codecName = Codecs.codecName(binaryName);
+        String simpleName = codecName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1);
+        String typeName = type.getQualifiedName().toString();
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(codecName, type).openWriter();
+             PrintWriter out = new PrintWriter(writer)) {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("@javax.annotation.processing.Generated(\"" + CodecProcessor.class.getName() + "\")");
+            out.println("public final class " + simpleName + " implements be.kdg.distrib.codec.ObjectCodec<" + typeName + "> {");
+            out.println("    @Override");
+            out.println("    public void encode(be.kdg.distrib.communication.Parameters.Builder parameters, String prefix, "
+                    + typeName + " object) throws IllegalAccessException {");
+            for (int i = 0; i < fields.size(); i++) {
+                out.println("        " + encoder(fields.get(i), "object." + getters.get(i)));
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    @SuppressWarnings(\"unchecked\")");
+            out.println("    public " + typeName + " decode(be.kdg.distrib.communication.ParameterTree fields) {");
+            if (setters != null) {
+                out.println("        " + typeName + " object = new " + typeName + "();");
+                for (int i = 0; i < fields.size(); i++) {
+                    String value = decoder(fields.get(i));
+                    String setter = setters.get(i);
+                    out.println("        object." + (setter.endsWith("=") ? setter + " " + value : setter + "(" + value + ")") + ";");
+                }
+                out.println("        return object;");
+            } else {
+                List<String> arguments = new ArrayList<>();
+                for (VariableElement parameter : constructor.getParameters()) {
+                    arguments.add(decoder(field(fields, parameter.getSimpleName().toString())));
+                }
+                out.println("        return new " + typeName + "(");
+                out.println("                " + String.join(",\n                ", arguments) + ");");
+            }
+            out.println("    }");
+            out.println("}");
+        } catch (IOException e) {
+            error(type, "unable to write the codec of " + type + ": " + e.getMessage());
+        }
+    }
+
+    private String encoder(VariableElement field, String read) {
+        TypeMirror type = field.asType();
+        String key = "prefix + \"." + field.getSimpleName() + "\"";
+        if (type.getKind().isPrimitive()) {
+            return "parameters.add(" + key + ", be.kdg.distrib.communication.ParameterValue.of(" + read + "));";
+        }
+        if (isSimple(type)) {
+            return "parameters.add(" + key + ", be.kdg.distrib.codec.Codecs.value(" + read + "));";
+        }
+        return "be.kdg.distrib.util.InvocationFormatter.encodeObject(parameters, " + key + ", " + read + ");";
+    }
+
+    private String decoder(VariableElement field) {
+        TypeMirror type = field.asType();
+        String name = "\"" + field.getSimpleName() + "\"";
+        switch (type.getKind()) {
+            case BOOLEAN: return "be.kdg.distrib.codec.Codecs.asBoolean(fields, " + name + ")";
+            case CHAR: return "be.kdg.distrib.codec.Codecs.asChar(fields, " + name + ")";
+            case BYTE: return "be.kdg.distrib.codec.Codecs.asByte(fields, " + name + ")";
+            case SHORT: return "be.kdg.distrib.codec.Codecs.asShort(fields, " + name + ")";
+            case INT: return "be.kdg.distrib.codec.Codecs.asInt(fields, " + name + ")";
+            case LONG: return "be.kdg.distrib.codec.Codecs.asLong(fields, " + name + ")";
+            case FLOAT: return "be.kdg.distrib.codec.Codecs.asFloat(fields, " + name + ")";
+            case DOUBLE: return "be.kdg.distrib.codec.Codecs.asDouble(fields, " + name + ")";
+            default: break;
+        }
+        if (isType(type, String.class)) {
+            return "be.kdg.distrib.codec.Codecs.asString(fields, " + name + ")";
+        }
+
+        String erased = processingEnv.getTypeUtils().erasure(type).toString();
+        if (isSimple(type)) {
+            return "(" + type + ") be.kdg.distrib.codec.Codecs.as(fields, " + name + ", " + erased + ".class)";
+        }
+        // nested objects are parsed like any other, with their own codec when they have one
+        return "(" + type + ") be.kdg.distrib.util.ObjectParser.parse(" + erased + ".class, fields.child(" + name + "))";
+    }
+
+    // -- ACCESSORS ------------------------
+    /**
+     * @return The expression that reads a field from {@code object.}, or null when it can not be read
+     */
+    private String getter(TypeElement type, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+            boolean named = methodName.equals("get" + capitalized)
+                    || (field.asType().getKind() == TypeKind.BOOLEAN && methodName.equals("is" + capitalized));
+            if (named && method.getParameters().isEmpty() && isAccessible(method)
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                return methodName + "()";
+            }
+        }
+        return isAccessible(field) ? name : null;
+    }
+
+    /**
+     * @return For every field the setter, or the field followed by {@code =}, or null when
+     * the class has no accessible no-arg constructor or a field can not be written
+     */
+    private List<String> setters(TypeElement type, List<VariableElement> fields) {
+        boolean constructor = false;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            constructor |= candidate.getParameters().isEmpty() && isAccessible(candidate);
+        }
+        if (!constructor) return null;
+
+        List<String> setters = new ArrayList<>();
+        for (VariableElement field : fields) {
+            String setter = setter(type, field);
+            if (setter == null) return null;
+            setters.add(setter);
+        }
+        return setters;
+    }
+
+    private String setter(TypeElement type, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().contentEquals(setterName) && method.getParameters().size() == 1 && isAccessible(method)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType())) {
+                return setterName;
+            }
+        }
+        return isAccessible(field) && !field.getModifiers().contains(Modifier.FINAL) ? name + " =" : null;
+    }
+
+    /**
+     * @return An accessible constructor that takes every field, as parameters with the names and types of the fields
+     */
+    private ExecutableElement fieldConstructor(TypeElement type, List<VariableElement> fields) {
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!isAccessible(candidate) || candidate.getParameters().size() != fields.size()) continue;
+
+            boolean matches = true;
+            for (VariableElement parameter : candidate.getParameters()) {
+                VariableElement field = field(fields, parameter.getSimpleName().toString());
+                matches &= field != null && processingEnv.getTypeUtils().isSameType(field.asType(), parameter.asType());
+            }
+            if (matches) return candidate;
+        }
+        return null;
+    }
+
+    // -- HELPER METHODS -------------------
+    private static VariableElement field(List<VariableElement> fields, String name) {
+        for (VariableElement field : fields) {
+            if (field.getSimpleName().contentEquals(name)) return field;
+        }
+        return null;
+    }
+
+    private static boolean isAccessible(Element element) {
+        return !element.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    /**
+     * Mirrors {@link be.kdg.distrib.util.PrimitiveUtils#isSimpleType} at compile time.
+     */
+    private boolean isSimple(TypeMirror type) {
+        if (type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID) return true;
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE;
+        }
+        if (type.getKind() != TypeKind.DECLARED) return false;
+
+        if (isWrapper(type) || isType(type, String.class) || isType(type, Void.class)) {
+            return true;
+        }
+        return isSubtype(type, java.nio.ByteBuffer.class) || isSubtype(type, java.nio.file.Path.class)
+                || isSubtype(type, java.io.InputStream.class);
+    }
+
+    private boolean isWrapper(TypeMirror type) {
+        try {
+            processingEnv.getTypeUtils().unboxedType(type);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isType(TypeMirror type, Class<?> expected) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(expected.getCanonicalName());
+        return element != null && processingEnv.getTypeUtils().isSameType(type, element.asType());
+    }
+
+    private boolean isSubtype(TypeMirror type, Class<?> expected) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(expected.getCanonicalName());
+        return element != null && processingEnv.getTypeUtils().isAssignable(type, element.asType());
+    }
+
+    private void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,171 @@
+package be.kdg.distrib.codec;
+
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.exception.ParseException;
+
+import static be.kdg.distrib.util.PrimitiveUtils.getWrapperType;
+
+/**
+ * Finds generated codecs, and reads the fields of objects for them.
+ * The readers fail the way {@link be.kdg.distrib.util.ObjectParser} does: a missing field is an
+ * {@link IllegalArgumentException}, a value that does not convert is a {@link ParseException}.
+ */
+public final class Codecs {
+    /**
+     * Suffix of the name of a generated codec, see {@link #codecName(String)}.
+     */
+    public static final String SUFFIX = "_Codec";
+
+    private Codecs() {
+    }
+
+    // -- LOOKUP ---------------------------
+    /**
+     * Finds the generated codec of a class.
+     * @param type Any class
+     * @return A new instance of the codec, or null when none was generated for the class
+     */
+    public static ObjectCodec<?> find(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isInterface()) return null;
+        try {
+            Class<?> codec = Class.forName(codecName(type.getName()), true, type.getClassLoader());
+            if (!ObjectCodec.class.isAssignableFrom(codec)) return null;
+            return (ObjectCodec<?>) codec.getConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Ignoring codec of " + type.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Names the codec of a class: the class {@code a.b.Outer$Inner} has the codec {@code a.b.Outer_Inner_Codec}.
+     * @param binaryName The binary name of the class
+     * @return The binary name of its codec
+     */
+    public static String codecName(String binaryName) {
+        return binaryName.replace('$', '_') + SUFFIX;
+    }
+
+    // -- ENCODING -------------------------
+    /**
+     * @param value A field of a simple reference type, may be null
+     * @return The value as a parameter
+     */
+    public static ParameterValue value(Object value) {
+        return ParameterValue.ofObject(value);
+    }
+
+    // -- DECODING -------------------------
+    public static boolean asBoolean(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asBoolean();
+        } catch (RuntimeException e) {
+            throw unparsable(value, boolean.class, e);
+        }
+    }
+
+    public static char asChar(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asChar();
+        } catch (RuntimeException e) {
+            throw unparsable(value, char.class, e);
+        }
+    }
+
+    public static byte asByte(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asByte();
+        } catch (RuntimeException e) {
+            throw unparsable(value, byte.class, e);
+        }
+    }
+
+    public static short asShort(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asShort();
+        } catch (RuntimeException e) {
+            throw unparsable(value, short.class, e);
+        }
+    }
+
+    public static int asInt(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asInt();
+        } catch (RuntimeException e) {
+            throw unparsable(value, int.class, e);
+        }
+    }
+
+    public static long asLong(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asLong();
+        } catch (RuntimeException e) {
+            throw unparsable(value, long.class, e);
+        }
+    }
+
+    public static float asFloat(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asFloat();
+        } catch (RuntimeException e) {
+            throw unparsable(value, float.class, e);
+        }
+    }
+
+    public static double asDouble(ParameterTree fields, String key) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.asDouble();
+        } catch (RuntimeException e) {
+            throw unparsable(value, double.class, e);
+        }
+    }
+
+    public static String asString(ParameterTree fields, String key) {
+        return (String) as(fields, key, String.class);
+    }
+
+    /**
+     * Reads a field of any other simple type, such as a wrapper or a stream.
+     * @param fields Node of an object in the tree of parameters
+     * @param key Name of the field
+     * @param type Type of the field
+     * @return The value as the type
+     */
+    public static Object as(ParameterTree fields, String key, Class<?> type) {
+        ParameterValue value = field(fields, key);
+        try {
+            return value.as(type);
+        } catch (RuntimeException e) {
+            throw unparsable(value, type, e);
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    private static ParameterValue field(ParameterTree fields, String key) {
+        ParameterTree field = fields.child(key);
+        if (field == null) {
+            throw new IllegalArgumentException("Expected arguments to be passed when not expecting a void");
+        }
+        ParameterValue value = field.getValue();
+        if (value == null) {
+            throw new ParseException("No value for field " + key, null);
+        }
+        return value;
+    }
+
+    private static ParseException unparsable(ParameterValue value, Class<?> type, RuntimeException cause) {
+        String em = String.format("Unable to parse '%s' to type %s", value, getWrapperType(type).getSimpleName());
+        return new ParseException(em, cause);
+    }
+}
@@ -0,0 +1,28 @@
+package be.kdg.distrib.codec;
+
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.Parameters;
+
+/**
+ * Encodes and decodes the objects of one class without reflection.
+ * Codecs are written by the {@link CodecProcessor}, they produce the same parameters as
+ * {@link be.kdg.distrib.util.InvocationFormatter} and read them back like {@link be.kdg.distrib.util.ObjectParser}.
+ * @param <T> The class of the objects
+ */
+public interface ObjectCodec<T> {
+    /**
+     * Encodes the fields of an object as parameters {@code prefix.field}.
+     * @param parameters Builder that receives the parameters
+     * @param prefix Key of the object
+     * @param object The object, not null
+     * @throws IllegalAccessException Thrown when a nested object without codec can not be read
+     */
+    void encode(Parameters.Builder parameters, String prefix, T object) throws IllegalAccessException;
+
+    /**
+     * Recreates an object from its fields.
+     * @param fields Node of the object in the tree of parameters, its children are the fields
+     * @return The new object
+     */
+    T decode(ParameterTree fields);
+}
@@ -0,0 +1,17 @@
+package be.kdg.distrib.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a remote interface whose objects get a codec generated at compile time.
+ * The {@link CodecProcessor} writes an {@link ObjectCodec} for every class the interface's methods
+ * take or return, and for the classes of their fields. Objects without a generated codec get
+ * a codec built from method handles the first time they are encoded or decoded.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Remote {
+}
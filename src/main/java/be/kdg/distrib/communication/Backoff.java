@@ -0,0 +1,34 @@
+package be.kdg.distrib.communication;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Adaptive wait strategy for threads that poll shared memory.
+ * A waiting thread first spins, which reacts fastest, then yields its core,
+ * and finally parks for increasing periods so an idle poller costs almost no CPU.
+ */
+final class Backoff {
+    // spinning only helps when the other side runs on another core
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 2_000 : 0;
+    private static final int YIELDS = 100;
+    private static final long MIN_PARK_NANOS = 1_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private Backoff() {
+    }
+
+    /**
+     * Waits a little, depending on how long the caller has been waiting already.
+     * @param attempt Amount of times the caller found nothing to do, starting at 0
+     */
+    static void idle(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(attempt - SPINS - YIELDS, 10);
+            LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package be.kdg.distrib.communication;
+
+/**
+ * Compact binary frames with typed values and a per-connection key dictionary, see {@link BinaryMessageCodec}.
+ * The only codec that streams large binary parameters and compresses large frames.
+ */
+public final class BinaryCodec implements MessageCodec {
+    public static final String NAME = "binary";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getId() {
+        return 2;
+    }
+
+    @Override
+    public boolean supportsCompression() {
+        return true;
+    }
+
+    @Override
+    public FrameCodec open(boolean compress) {
+        return new BinaryMessageCodec(compress);
+    }
+}
@@ -0,0 +1,776 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes messages in the binary wire format of one connection, the codec of {@link BinaryCodec}.
+ * <p>
+ * The format is chosen when the connection is opened: the client sends a hello with the highest
+ * version it supports and the {@link MessageCodec} it prefers, the server answers with the version
+ * and codec both sides will use. All codecs share the hello and the length that starts a frame.
+ * Peers that do not send a hello keep using the text format of {@link MessageReaderWriter}.
+ * <p>
+ * Every message is a frame that starts with its length as a 4-byte big-endian integer:
+ * <pre>
+ * flags        byte       1 = reply on connection, 2 = one-way, 4 = reply
+ * callId       varint
+ * originator   key, varint port
+ * method       key
+ * count        varint     amount of parameters
+ * parameters   key, byte type, value
+ * </pre>
+ * Strings are a varint length followed by UTF-8 bytes. A value is written as its {@link ParameterValue.Type}:
+ * a string, a zigzag varint for integral types and chars, the raw bits of a float or double,
+ * a varint length followed by the bytes of a byte array, or only its type for true and false.
+ * <p>
+ * A key is a varint: 0 followed by the key as a string the first time, or the number the
+ * {@link KeyDictionary} of the connection gave it, so the encoder and decoder of a connection are stateful. Encoding and decoding may happen
+ * on different threads, but each of them only on one thread at a time.
+ * <p>
+ * Frames are encoded straight into pooled direct buffers and decoded from the buffer the bytes
+ * were read into, so apart from the decoded message itself nothing is allocated per message.
+ * <p>
+ * When both sides offer {@link #FEATURE_DEFLATE} in their hello, frames of at least
+ * {@link #COMPRESSION_THRESHOLD} bytes are compressed. The highest bit of the length marks them.
+ * Compressed frames of a connection form one deflate stream that is flushed after every frame,
+ * so later messages are compressed with the keys and values of earlier ones as dictionary.
+ * <p>
+ * A {@link ParameterValue.Type#STREAM} is not part of the frame, the frame only holds its length plus one,
+ * or 0 when its length is unknown. The content of all streams follows the frame in the order of their
+ * parameters, uncompressed: buffers and files as they are, streams of unknown length as chunks that
+ * start with their length as a 4-byte integer, up to a chunk of length 0.
+ * Buffers and files are handed to the gathering write as they are, files as read-only mappings.
+ * Streams of unknown length, and the streams after them, are left to {@link #writeStreams(ChunkWriter)}
+ * so only one chunk of them is in memory at a time.
+ */
+final class BinaryMessageCodec implements FrameCodec {
+    static final int VERSION = 5;
+    static final int HELLO_SIZE = 8;
+    static final byte HELLO_START = 0;
+    static final int FEATURE_DEFLATE = 1;
+    static final int COMPRESSION_THRESHOLD = 512;
+
+    private static final byte[] HELLO_MAGIC = {HELLO_START, 'M', 'C', 'M'};
+    private static final byte HELLO_END = ';';
+    private static final int SUPPORTED_FEATURES = FEATURE_DEFLATE;
+    private static final int COMPRESSED = 0x80000000;
+
+    private static final int FLAG_REPLY_ON_CONNECTION = 1;
+    private static final int FLAG_ONE_WAY = 2;
+    private static final int FLAG_REPLY = 4;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_FALSE = 2;
+    private static final byte TYPE_TRUE = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_SHORT = 5;
+    private static final byte TYPE_BYTE = 6;
+    private static final byte TYPE_CHAR = 7;
+    private static final byte TYPE_FLOAT = 8;
+    private static final byte TYPE_DOUBLE = 9;
+    private static final byte TYPE_BYTES = 10;
+    private static final byte TYPE_STREAM = 11;
+    private static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+    private final BufferPool pool;
+    private final KeyDictionary dictionary;
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private final List<ByteBuffer> plain;
+    private final List<ByteBuffer> encoded;
+    private final List<Object> streams;
+    private long[] streamLengths;
+    private int streamCount;
+    private int nextStream;
+    private ByteBuffer inflated;
+    private Collection<ByteBuffer> out;
+    private ByteBuffer current;
+    private int written;
+    private ByteBuffer in;
+    private byte[] scratch;
+    private byte[] chunkBytes;
+    private int pendingStreams;
+
+    // -- CONSTRUCTORS ---------------------
+    BinaryMessageCodec() {
+        this(BufferPool.SHARED, false);
+    }
+
+    /**
+     * @param compress True when both sides agreed to compress large frames
+     */
+    BinaryMessageCodec(boolean compress) {
+        this(BufferPool.SHARED, compress);
+    }
+
+    /**
+     * @param pool The pool that provides the buffers frames are encoded in
+     * @param compress True when both sides agreed to compress large frames
+     */
+    BinaryMessageCodec(BufferPool pool, boolean compress) {
+        this.pool = pool;
+        this.dictionary = new KeyDictionary(KeyDictionary.DEFAULT_CAPACITY);
+        this.scratch = new byte[256];
+        this.encoded = new ArrayList<>();
+        this.streams = new ArrayList<>();
+        this.streamLengths = new long[8];
+
+        // the native memory of both is freed by their cleaner once the connection is gone
+        this.deflater = compress ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        this.inflater = compress ? new Inflater(true) : null;
+        this.plain = compress ? new ArrayList<>() : null;
+        this.inflated = compress ? ByteBuffer.allocate(4096) : null;
+    }
+
+    // -- NEGOTIATION ----------------------
+    /**
+     * Creates the hello that opens a framed connection, or answers it.
+     * It ends with an end-of-message token, so a peer that only reads text rejects it at once.
+     * @param version The offered or accepted version
+     * @param features The offered or accepted features, such as {@link #FEATURE_DEFLATE}
+     * @param codec The number of the offered or accepted codec
+     * @return The hello
+     */
+    static byte[] hello(int version, int features, int codec) {
+        byte[] hello = Arrays.copyOf(HELLO_MAGIC, HELLO_SIZE);
+        hello[4] = (byte) version;
+        hello[5] = (byte) features;
+        hello[6] = (byte) codec;
+        hello[7] = HELLO_END;
+        return hello;
+    }
+
+    /**
+     * @param hello A hello that was accepted by {@link #readHello(byte[])}
+     * @return The number of the codec the peer offered or accepted
+     */
+    static int readCodec(byte[] hello) {
+        return hello[6];
+    }
+
+    /**
+     * Reads the features out of a hello of the peer, that this side supports as well.
+     * @param hello A hello that was accepted by {@link #readHello(byte[])}
+     * @return The features both sides support
+     */
+    static int readFeatures(byte[] hello) {
+        return hello[5] & SUPPORTED_FEATURES;
+    }
+
+    /**
+     * Splits the length of a frame from the mark that it is compressed.
+     * @param header The first 4 bytes of the frame
+     * @return The length of the body
+     * @throws IOException Thrown when the length is invalid or larger than {@link MessageCodecs#getMaxFrameSize()}
+     */
+    static int frameLength(int header) throws IOException {
+        int length = header & ~COMPRESSED;
+        if (length == 0) throw new IOException("Empty frame");
+        checkFrameSize(length);
+        return length;
+    }
+
+    /**
+     * @param size The size of a frame, or of the part of it that was decompressed so far
+     * @throws IOException Thrown when the frame is larger than {@link MessageCodecs#getMaxFrameSize()}
+     */
+    static void checkFrameSize(long size) throws IOException {
+        int max = MessageCodecs.getMaxFrameSize();
+        if (size > max) throw new IOException("Frame of " + size + " bytes exceeds the maximum of " + max + " bytes");
+    }
+
+    static boolean isCompressed(int header) {
+        return (header & COMPRESSED) != 0;
+    }
+
+    /**
+     * Reads the version out of a hello of the peer.
+     * Only the current version is supported, an older one is rejected here: a server closes the connection,
+     * and a client that is rejected or answered with an older version opens a new connection in text instead,
+     * see {@link Connection#open}.
+     * @param hello The {@link #HELLO_SIZE} bytes that were received
+     * @return The version both sides use
+     * @throws IOException Thrown when the bytes are not a hello, or of an unsupported version
+     */
+    static int readHello(byte[] hello) throws IOException {
+        if (!Arrays.equals(hello, 0, HELLO_MAGIC.length, HELLO_MAGIC, 0, HELLO_MAGIC.length)
+                || hello[HELLO_SIZE - 1] != HELLO_END) {
+            throw new IOException("Peer did not answer with a binary hello");
+        }
+        if (hello[4] < VERSION) {
+            throw new IOException("Binary version " + hello[4] + " is not supported");
+        }
+        return VERSION;
+    }
+
+    // -- ENCODING -------------------------
+    /**
+     * Encodes a message as a frame, including its length, straight into direct buffers of the pool.
+     * The buffers are added to {@code out} ready to be written with a gathering write,
+     * whoever writes them hands them back to the pool.
+     * The content of streams up to the first one of unknown length follows the frame, read-only buffers
+     * among them are not from the pool. The rest is written by {@link #writeStreams(ChunkWriter)}.
+     * <p>
+     * Nothing is added to {@code out} when encoding fails, and the buffers of the frame go back to the pool.
+     * Streams are opened before any key is numbered, a file that can not be read leaves the dictionary as
+     * the peer knows it. Other failures may leave keys numbered that the peer never received,
+     * the connection must not be used anymore then.
+     * @param message The message that must be encoded
+     * @param out Receives the buffers of the frame, in read mode
+     * @throws IOException Thrown when a streamed file could not be read
+     */
+    @Override
+    public void encode(MethodCallMessage message, Collection<ByteBuffer> out) throws IOException {
+        // streams of a message that was never written are not written anymore
+        discardStreams();
+        try {
+            Map<String, ParameterValue> parameters = message.getParameterValues();
+            openStreams(parameters);
+            encodeFrame(message, parameters);
+        } catch (IOException | RuntimeException e) {
+            releaseFrame();
+            discardStreams();
+            throw e;
+        }
+        out.addAll(this.encoded);
+        this.encoded.clear();
+
+        int next = 0;
+        while (next < this.streams.size() && this.streams.get(next) instanceof ByteBuffer) {
+            out.add((ByteBuffer) this.streams.get(next++));
+        }
+        this.streams.subList(0, next).clear();
+    }
+
+    /**
+     * Writes the streams that follow the first stream of unknown length of the message that was encoded last.
+     * An input stream is read into one pooled buffer at a time, each is written before the next is read.
+     * @param writer Writes the chunks in order, and hands each of them back to the pool
+     * @throws IOException Thrown when a stream could not be read or a chunk could not be written
+     */
+    @Override
+    public void writeStreams(ChunkWriter writer) throws IOException {
+        try {
+            for (Object source : this.streams) {
+                if (source instanceof ByteBuffer) {
+                    writer.write((ByteBuffer) source);
+                } else {
+                    writeChunks((InputStream) source, writer);
+                }
+            }
+        } finally {
+            discardStreams();
+        }
+    }
+
+    @Override
+    public void discardStreams() {
+        for (Object source : this.streams) {
+            if (source instanceof InputStream) {
+                try {
+                    ((InputStream) source).close();
+                } catch (IOException ignored) {
+                    // the stream is not read anymore either way
+                }
+            }
+        }
+        this.streams.clear();
+    }
+
+    /**
+     * Collects the content of the streams of a message to follow its frame, and their lengths for the frame.
+     */
+    private void openStreams(Map<String, ParameterValue> parameters) throws IOException {
+        this.streamCount = 0;
+        this.nextStream = 0;
+        for (ParameterValue value : parameters.values()) {
+            if (value.getType() != ParameterValue.Type.STREAM) continue;
+
+            Object source = value.getStreamSource();
+            long length;
+            if (source instanceof ByteBuffer) {
+                ByteBuffer content = ((ByteBuffer) source).asReadOnlyBuffer();
+                length = content.remaining() + 1L;
+                this.streams.add(content);
+            } else if (source instanceof Path) {
+                // a mapping stays valid after its channel is closed
+                try (FileChannel file = FileChannel.open((Path) source)) {
+                    long size = file.size();
+                    length = size + 1;
+                    for (long position = 0; position < size; position += MAX_MAPPING) {
+                        this.streams.add(file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPING, size - position)));
+                    }
+                }
+            } else if (source instanceof InputStream) {
+                // input streams are only read once the frame was written, see writeStreams
+                length = 0;
+                this.streams.add(source);
+            } else {
+                throw new IOException("Stream of a message that was not received completely");
+            }
+
+            if (this.streamCount == this.streamLengths.length) {
+                this.streamLengths = Arrays.copyOf(this.streamLengths, this.streamCount * 2);
+            }
+            this.streamLengths[this.streamCount++] = length;
+        }
+    }
+
+    private void encodeFrame(MethodCallMessage message, Map<String, ParameterValue> parameters) {
+        ByteBuffer first = this.pool.acquire();
+        this.out = this.deflater != null ? this.plain : this.encoded;
+        this.current = first;
+        this.written = 0;
+        first.position(4);
+
+        int flags = (message.isReplyOnConnection() ? FLAG_REPLY_ON_CONNECTION : 0) | (message.isOneWay() ? FLAG_ONE_WAY : 0)
+                | (message.isReply() ? FLAG_REPLY : 0);
+        writeByte(flags);
+        writeVarLong(message.getCallId());
+        writeKey(message.getOriginator().getIpAddress());
+        writeVarLong(message.getOriginator().getPortNumber());
+        writeKey(message.getMethodName());
+
+        writeVarLong(parameters.size());
+        for (Map.Entry<String, ParameterValue> parameter : parameters.entrySet()) {
+            writeKey(parameter.getKey());
+            writeValue(parameter.getValue());
+        }
+
+        // the length is only known now, the first buffer always has room for it
+        int length = this.written + this.current.position() - 4;
+        this.current.flip();
+        this.out.add(this.current);
+        first.putInt(0, length);
+
+        this.out = null;
+        this.current = null;
+        if (this.deflater != null) {
+            compress(length);
+        }
+    }
+
+    /**
+     * Compresses the frame that was encoded into the plain buffers when it is large enough.
+     */
+    private void compress(int length) {
+        if (length < COMPRESSION_THRESHOLD) {
+            this.encoded.addAll(this.plain);
+            this.plain.clear();
+            return;
+        }
+
+        ByteBuffer first = this.pool.acquire();
+        this.current = first.position(4);
+        int compressed = 0;
+        this.plain.get(0).position(4);
+        for (ByteBuffer input : this.plain) {
+            this.deflater.setInput(input);
+            while (!this.deflater.needsInput()) {
+                this.deflater.deflate(this.current, Deflater.NO_FLUSH);
+                if (!this.current.hasRemaining()) {
+                    compressed += this.current.position();
+                    this.encoded.add(this.current.flip());
+                    this.current = this.pool.acquire();
+                }
+            }
+        }
+
+        // a sync flush ends the frame on a byte boundary, without resetting the dictionary
+        while (true) {
+            this.deflater.deflate(this.current, Deflater.SYNC_FLUSH);
+            if (this.current.hasRemaining()) break;
+            compressed += this.current.position();
+            this.encoded.add(this.current.flip());
+            this.current = this.pool.acquire();
+        }
+        compressed += this.current.position();
+        this.encoded.add(this.current.flip());
+        this.current = null;
+        first.putInt(0, (compressed - 4) | COMPRESSED);
+
+        this.plain.forEach(this.pool::release);
+        this.plain.clear();
+    }
+
+    /**
+     * Hands every buffer of a frame that could not be encoded back to the pool.
+     */
+    private void releaseFrame() {
+        if (this.current != null) this.pool.release(this.current);
+        this.encoded.forEach(this.pool::release);
+        if (this.plain != null) this.plain.forEach(this.pool::release);
+        this.current = null;
+        this.out = null;
+        this.encoded.clear();
+        if (this.plain != null) this.plain.clear();
+    }
+
+    private void writeKey(String key) {
+        int id = this.dictionary.send(key);
+        writeVarLong(id);
+        if (id == 0) {
+            writeString(key);
+        }
+    }
+
+    private void writeValue(ParameterValue value) {
+        switch (value.getType()) {
+            case BOOLEAN:
+                writeByte(value.asBoolean() ? TYPE_TRUE : TYPE_FALSE);
+                break;
+            case CHAR:
+                writeByte(TYPE_CHAR);
+                writeVarLong(value.asChar());
+                break;
+            case BYTE:
+                writeByte(TYPE_BYTE);
+                writeByte(value.asByte());
+                break;
+            case SHORT:
+                writeByte(TYPE_SHORT);
+                writeZigZag(value.asShort());
+                break;
+            case INT:
+                writeByte(TYPE_INT);
+                writeZigZag(value.asInt());
+                break;
+            case LONG:
+                writeByte(TYPE_LONG);
+                writeZigZag(value.asLong());
+                break;
+            case FLOAT:
+                writeByte(TYPE_FLOAT);
+                ensureRemaining(4);
+                this.current.putFloat(value.asFloat());
+                break;
+            case DOUBLE:
+                writeByte(TYPE_DOUBLE);
+                ensureRemaining(8);
+                this.current.putDouble(value.asDouble());
+                break;
+            case BYTES:
+                writeByte(TYPE_BYTES);
+                writeBytes(value.asBytes());
+                break;
+            case STREAM:
+                // the length, or 0 when it is unknown, was taken when the streams were opened
+                writeByte(TYPE_STREAM);
+                writeVarLong(this.streamLengths[this.nextStream++]);
+                break;
+            default:
+                // the text format writes a missing value the same way
+                String text = value.toString();
+                writeByte(TYPE_STRING);
+                writeString(text != null ? text : "null");
+                break;
+        }
+    }
+
+    /**
+     * Reads a stream of unknown length into a pooled buffer per chunk, and writes each chunk before reading the next.
+     */
+    private void writeChunks(InputStream source, ChunkWriter writer) throws IOException {
+        // the decoder uses scratch, and may run at the same time on another thread
+        if (this.chunkBytes == null) {
+            this.chunkBytes = new byte[8192];
+        }
+        while (true) {
+            ByteBuffer chunk = this.pool.acquire();
+            int length = 0;
+            int capacity = chunk.capacity() - 4;
+            chunk.position(4);
+            try {
+                while (length < capacity) {
+                    int count = source.read(this.chunkBytes, 0, Math.min(this.chunkBytes.length, capacity - length));
+                    if (count < 0) break;
+                    chunk.put(this.chunkBytes, 0, count);
+                    length += count;
+                }
+            } catch (IOException | RuntimeException e) {
+                this.pool.release(chunk);
+                throw e;
+            }
+            writer.write(chunk.putInt(0, length).flip());
+            if (length == 0) return;
+            if (length < capacity) {
+                // the stream ended, the chunk of length 0 marks it
+                writer.write(this.pool.acquire().putInt(0).flip());
+                return;
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeVarLong(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureRemaining(1);
+            int count = Math.min(this.current.remaining(), bytes.length - offset);
+            this.current.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    private void writeString(String value) {
+        writeVarLong(utf8Length(value));
+        for (int i = 0; i < value.length(); i++) {
+            ensureRemaining(4);
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                this.current.put((byte) c);
+            } else if (c < 0x800) {
+                this.current.put((byte) (0xC0 | (c >> 6)));
+                this.current.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                this.current.put((byte) (0xF0 | (codePoint >> 18)));
+                this.current.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                this.current.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                this.current.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced, like String.getBytes does
+                this.current.put((byte) '?');
+            } else {
+                this.current.put((byte) (0xE0 | (c >> 12)));
+                this.current.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                this.current.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeVarLong(long value) {
+        ensureRemaining(10);
+        while ((value & ~0x7FL) != 0) {
+            this.current.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.current.put((byte) value);
+    }
+
+    private void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeByte(int value) {
+        ensureRemaining(1);
+        this.current.put((byte) value);
+    }
+
+    /**
+     * Continues the frame in a new buffer when the current one is almost full.
+     */
+    private void ensureRemaining(int bytes) {
+        if (this.current.remaining() < bytes) {
+            this.written += this.current.position();
+            this.current.flip();
+            this.out.add(this.current);
+            this.current = this.pool.acquire();
+        }
+    }
+
+    // -- DECODING -------------------------
+    /**
+     * Decodes the body of a frame, without its length.
+     * @param header The first 4 bytes of the frame
+     * @param body Buffer that holds exactly the body between its position and limit, it is read up to its limit
+     * @return The message, with a pending value for each stream that follows the frame
+     * @throws IOException Thrown when the body is not a valid message
+     * @see #getPendingStreams()
+     */
+    @Override
+    public MethodCallMessage decode(int header, ByteBuffer body) throws IOException {
+        if (isCompressed(header)) {
+            if (this.inflater == null) throw new IOException("Compressed frame on a connection without compression");
+            body = inflate(body);
+        }
+        this.in = body;
+        this.pendingStreams = 0;
+        try {
+            int flags = readByte();
+            long callId = readVarLong();
+            String ipAddress = readKey();
+            int port = (int) readVarLong();
+            String methodName = readKey();
+
+            MethodCallMessage message = new MethodCallMessage(NetworkAddress.parse(ipAddress, port), methodName);
+            long count = readVarLong();
+            for (long i = 0; i < count; i++) {
+                String key = readKey();
+                message.setParameter(key, readValue());
+            }
+            if (body.hasRemaining()) {
+                throw new IOException("Frame length does not match its message");
+            }
+
+            message.setCallId(callId);
+            message.setReplyOnConnection((flags & FLAG_REPLY_ON_CONNECTION) != 0);
+            message.setOneWay((flags & FLAG_ONE_WAY) != 0);
+            message.setReply((flags & FLAG_REPLY) != 0);
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Frame ends in the middle of a message", e);
+        } finally {
+            this.in = null;
+        }
+    }
+
+    @Override
+    public int getPendingStreams() {
+        return this.pendingStreams;
+    }
+
+    private ByteBuffer inflate(ByteBuffer body) throws IOException {
+        this.inflated.clear();
+        this.inflater.setInput(body);
+        try {
+            while (true) {
+                this.inflater.inflate(this.inflated);
+                if (!this.inflated.hasRemaining()) {
+                    // the buffer grows to one byte more than the maximum, so a frame that fills it is too large
+                    checkFrameSize(this.inflated.capacity());
+                    long capacity = Math.min(this.inflated.capacity() * 2L, MessageCodecs.getMaxFrameSize() + 1L);
+                    ByteBuffer larger = ByteBuffer.allocate((int) Math.min(capacity, Integer.MAX_VALUE - 8));
+                    this.inflated = larger.put(this.inflated.flip());
+                } else if (this.inflater.needsInput()) {
+                    break;
+                } else if (this.inflater.finished() || this.inflater.needsDictionary()) {
+                    throw new IOException("Compressed stream ended unexpectedly");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed frame", e);
+        }
+        return this.inflated.flip();
+    }
+
+    private String readKey() throws IOException {
+        int id = (int) readVarLong();
+        if (id > 0) {
+            return this.dictionary.receive(id);
+        }
+
+        String key = readString();
+        this.dictionary.received(key);
+        return key;
+    }
+
+    private ParameterValue readValue() throws IOException {
+        int type = readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return ParameterValue.of(readString());
+            case TYPE_INT:
+                return ParameterValue.of((int) readZigZag());
+            case TYPE_FALSE:
+                return ParameterValue.of(false);
+            case TYPE_TRUE:
+                return ParameterValue.of(true);
+            case TYPE_LONG:
+                return ParameterValue.of(readZigZag());
+            case TYPE_SHORT:
+                return ParameterValue.of((short) readZigZag());
+            case TYPE_BYTE:
+                return ParameterValue.of((byte) readByte());
+            case TYPE_CHAR:
+                return ParameterValue.of((char) readVarLong());
+            case TYPE_FLOAT:
+                return ParameterValue.of(this.in.getFloat());
+            case TYPE_DOUBLE:
+                return ParameterValue.of(this.in.getDouble());
+            case TYPE_BYTES:
+                return ParameterValue.of(readBytes());
+            case TYPE_STREAM:
+                this.pendingStreams++;
+                return ParameterValue.pendingStream(readVarLong() - 1);
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        int length = (int) readVarLong();
+        if (length < 0 || length > this.in.remaining()) {
+            throw new IOException("Bytes do not fit in the frame");
+        }
+        byte[] bytes = new byte[length];
+        this.in.get(bytes);
+        return bytes;
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarLong();
+        if (length < 0 || length > this.in.remaining()) {
+            throw new IOException("String does not fit in the frame");
+        }
+
+        if (this.in.hasArray()) {
+            String value = new String(this.in.array(), this.in.arrayOffset() + this.in.position(), length, StandardCharsets.UTF_8);
+            this.in.position(this.in.position() + length);
+            return value;
+        }
+
+        // direct buffers are copied into one reused array first
+        if (length > this.scratch.length) {
+            this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+        }
+        this.in.get(this.scratch, 0, length);
+        return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = this.in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private long readZigZag() {
+        long zigzag = readVarLong();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private int readByte() {
+        return this.in.get();
+    }
+}
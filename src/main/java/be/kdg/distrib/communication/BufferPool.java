@@ -0,0 +1,56 @@
+package be.kdg.distrib.communication;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps direct byte buffers of a fixed size for reuse, so encoding and sending a message
+ * does not allocate new buffers. Buffers that do not belong to the pool are ignored when
+ * they are released, and at most {@code maxIdle} buffers are kept.
+ */
+final class BufferPool {
+    static final int BUFFER_SIZE = 16 * 1024;
+    static final BufferPool SHARED = new BufferPool(BUFFER_SIZE, 1024);
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final Queue<ByteBuffer> idle;
+    private final AtomicInteger idleCount;
+
+    // -- CONSTRUCTOR ----------------------
+    BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.idleCount = new AtomicInteger();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * @return An empty buffer, in write mode
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = this.idle.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(this.bufferSize);
+        }
+        this.idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back for reuse, it must not be used by the caller anymore.
+     * @param buffer A buffer from {@link #acquire()}, other buffers are ignored
+     */
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.isReadOnly() || buffer.capacity() != this.bufferSize) return;
+        if (this.idleCount.incrementAndGet() > this.maxIdle) {
+            this.idleCount.decrementAndGet();
+            return;
+        }
+        this.idle.offer(buffer);
+    }
+}
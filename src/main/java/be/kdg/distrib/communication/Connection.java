@@ -0,0 +1,369 @@
+package be.kdg.distrib.communication;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A keep-alive connection to a single destination.
+ * Messages written to the connection are terminated explicitly, so the
+ * receiving side can read several messages from it before it is closed.
+ * Replies that are sent back on the connection are read with {@link #read()}.
+ * <p>
+ * A connection that is opened with {@link WireFormat#BINARY} or {@link WireFormat#COMPRESSED}
+ * first asks the peer to switch to frames of a {@link MessageCodec}, and falls back to a new text connection when the peer does not understand it.
+ * Binary frames are written from pooled direct buffers with gathering writes, and decoded
+ * from the connection's own direct read buffer. Text replies are parsed from the same buffer as they arrive.
+ * Streamed parameters are written as they are, and received into memory or a temporary file before the reply is returned.
+ *
+ * @see ConnectionPool
+ */
+final class Connection implements Closeable {
+    /**
+     * Time the peer gets to answer the hello, a peer that keeps silent is treated like one that only reads text.
+     */
+    static final long HELLO_TIMEOUT_MILLIS = 5_000;
+    private static final int MAX_GATHER = 64;
+
+    private final NetworkAddress address;
+    private final SocketChannel channel;
+    private final FrameCodec codec;
+    private final ByteBuffer readBuffer;
+    private final List<ByteBuffer> frame;
+    private final ByteBuffer[] gather;
+    private final PrintWriter writer;
+    private final TextMessageParser parser;
+    private final Deque<MethodCallMessage> parsed;
+    private final ByteBuffer probe;
+    private long lastUsed;
+
+    // -- CONSTRUCTOR ----------------------
+    private Connection(NetworkAddress address, WireFormat format, MessageCodec codec) throws IOException {
+        this.address = address;
+        this.channel = SocketChannel.open(address.toSocketAddress());
+        if (!address.isUnixDomain()) {
+            this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        }
+        this.probe = ByteBuffer.allocate(1);
+        this.lastUsed = System.currentTimeMillis();
+
+        // binary frames are written with direct buffers, text goes through a stream
+        this.readBuffer = ByteBuffer.allocateDirect(BufferPool.BUFFER_SIZE).limit(0);
+        if (format != WireFormat.TEXT) {
+            this.frame = new ArrayList<>();
+            this.gather = new ByteBuffer[MAX_GATHER];
+            this.writer = null;
+            this.parser = null;
+            this.parsed = null;
+            this.codec = negotiate(format == WireFormat.COMPRESSED ? BinaryMessageCodec.FEATURE_DEFLATE : 0, codec);
+        } else {
+            this.frame = null;
+            this.gather = null;
+            this.writer = MessageReaderWriter.createWriter(ChannelStreams.output(this.channel));
+            this.parser = new TextMessageParser();
+            this.parsed = new ArrayDeque<>();
+            this.codec = null;
+        }
+    }
+
+    /**
+     * Opens a connection in the given format, or in text when the peer does not support it.
+     * Only a peer that accepted the connection and then closed it or rejected the hello is dialed again in text,
+     * a peer that can not be reached or does not answer the hello in time is not.
+     * @param address The destination of the connection
+     * @param format The preferred wire format
+     * @param codec The codec offered to the peer, when the format is not text
+     * @return The open connection
+     * @throws IOException Thrown when the connection could not be opened
+     */
+    static Connection open(NetworkAddress address, WireFormat format, MessageCodec codec) throws IOException {
+        if (format == WireFormat.TEXT) {
+            return new Connection(address, WireFormat.TEXT, null);
+        }
+
+        try {
+            return new Connection(address, format, codec);
+        } catch (HelloRejectedException e) {
+            // peers that only read text close the connection when they receive the hello
+            return new Connection(address, WireFormat.TEXT, null);
+        }
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Writes a single message to the connection.
+     * @param message The message that must be written
+     * @throws IOException Thrown when the message could not be written
+     */
+    void write(MethodCallMessage message) throws IOException {
+        if (this.codec != null) {
+            writeFrame(message);
+        } else {
+            MessageReaderWriter.write(message, this.writer);
+            if (this.writer.checkError()) {
+                throw new IOException("Failed to write message to " + this.address);
+            }
+        }
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the next message that the peer wrote on the connection.
+     * Blocks until the message is available.
+     * @return The message that was read
+     * @throws IOException Thrown when the peer closed the connection or sent an invalid message
+     */
+    MethodCallMessage read() throws IOException {
+        MethodCallMessage message = this.codec != null ? readFrame() : readText();
+        if (message == null) {
+            throw new IOException("Connection to " + this.address + " was closed by the peer");
+        }
+        this.lastUsed = System.currentTimeMillis();
+        return message;
+    }
+
+    /**
+     * Checks whether the connection can still be used without blocking.
+     * The peer only writes on the connection to reply to a message, so any
+     * readable data or an end of stream while idle means the connection is no longer usable.
+     * @return True when the connection is still open
+     */
+    boolean isHealthy() {
+        if (!this.channel.isOpen() || !this.channel.isConnected()) return false;
+
+        try {
+            this.channel.configureBlocking(false);
+            this.probe.clear();
+            int read = this.channel.read(this.probe);
+            this.channel.configureBlocking(true);
+            return read == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    boolean isIdleLongerThan(long millis, long now) {
+        return now - this.lastUsed > millis;
+    }
+
+    NetworkAddress getAddress() {
+        return this.address;
+    }
+
+    // -- HELPER METHODS -------------------
+    private FrameCodec negotiate(int features, MessageCodec offered) throws IOException {
+        try {
+            ByteBuffer hello = ByteBuffer.wrap(BinaryMessageCodec.hello(BinaryMessageCodec.VERSION, features, offered.getId()));
+            while (hello.hasRemaining()) {
+                this.channel.write(hello);
+            }
+
+            awaitHello();
+            byte[] answer = new byte[BinaryMessageCodec.HELLO_SIZE];
+            this.readBuffer.get(answer);
+            BinaryMessageCodec.readHello(answer);
+
+            // the peer may answer with another codec than the offered one
+            MessageCodec codec = MessageCodecs.forId(BinaryMessageCodec.readCodec(answer));
+            if (codec == null) {
+                throw new IOException("Peer answered with unknown codec " + BinaryMessageCodec.readCodec(answer));
+            }
+            int accepted = codec.supportsCompression() ? BinaryMessageCodec.readFeatures(answer) & features : 0;
+            return codec.open((accepted & BinaryMessageCodec.FEATURE_DEFLATE) != 0);
+        } catch (SocketTimeoutException e) {
+            // a slow peer is not one that only reads text
+            close();
+            throw e;
+        } catch (IOException e) {
+            close();
+            throw new HelloRejectedException(e);
+        }
+    }
+
+    /**
+     * Reads until the read buffer holds the answer to the hello, without blocking longer than {@link #HELLO_TIMEOUT_MILLIS}.
+     * A blocking channel ignores read timeouts, so it waits on a selector instead.
+     */
+    private void awaitHello() throws IOException {
+        this.channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            this.channel.register(selector, SelectionKey.OP_READ);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HELLO_TIMEOUT_MILLIS);
+            while (this.readBuffer.remaining() < BinaryMessageCodec.HELLO_SIZE) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    throw new SocketTimeoutException("Peer did not answer the hello within " + HELLO_TIMEOUT_MILLIS + " ms");
+                }
+                selector.select(left);
+
+                this.readBuffer.compact();
+                int read = this.channel.read(this.readBuffer);
+                this.readBuffer.flip();
+                if (read < 0) {
+                    throw new EOFException("Connection closed before the peer answered the hello");
+                }
+            }
+        }
+        // closing the selector cancelled the registration
+        this.channel.configureBlocking(true);
+    }
+
+    /**
+     * Encodes a message into pooled buffers and writes all of them with gathering writes,
+     * streams of unknown length follow chunk by chunk.
+     */
+    private void writeFrame(MethodCallMessage message) throws IOException {
+        try {
+            this.codec.encode(message, this.frame);
+        } catch (RuntimeException e) {
+            // keys of the message may be numbered while the peer never received them
+            throw new IOException("Failed to encode message to " + this.address, e);
+        }
+        try {
+            int next = 0;
+            while (next < this.frame.size()) {
+                int count = Math.min(this.frame.size() - next, MAX_GATHER);
+                for (int i = 0; i < count; i++) {
+                    this.gather[i] = this.frame.get(next + i);
+                }
+                this.channel.write(this.gather, 0, count);
+                while (next < this.frame.size() && !this.frame.get(next).hasRemaining()) {
+                    next++;
+                }
+            }
+            this.codec.writeStreams(this::writeChunk);
+        } finally {
+            this.codec.discardStreams();
+            this.frame.forEach(BufferPool.SHARED::release);
+            this.frame.clear();
+            Arrays.fill(this.gather, null);
+        }
+    }
+
+    private void writeChunk(ByteBuffer chunk) throws IOException {
+        try {
+            while (chunk.hasRemaining()) {
+                this.channel.write(chunk);
+            }
+        } finally {
+            BufferPool.SHARED.release(chunk);
+        }
+    }
+
+    /**
+     * Reads the next frame, it is decoded straight from the read buffer when it fits in it.
+     */
+    private MethodCallMessage readFrame() throws IOException {
+        if (!fill(4)) {
+            return null;
+        }
+
+        int header = this.readBuffer.getInt();
+        int length = BinaryMessageCodec.frameLength(header);
+
+        ByteBuffer body;
+        if (4 + length <= this.readBuffer.capacity()) {
+            if (!fill(length)) throw new EOFException("Connection closed in the middle of a frame");
+            body = this.readBuffer;
+        } else {
+            // frames that are larger than the read buffer are rare, they get a buffer of their own
+            body = ByteBuffer.allocate(length);
+            body.put(this.readBuffer);
+            while (body.hasRemaining()) {
+                if (this.channel.read(body) < 0) throw new EOFException("Connection closed in the middle of a frame");
+            }
+            body.flip();
+        }
+
+        int limit = this.readBuffer.limit();
+        int end = body == this.readBuffer ? this.readBuffer.position() + length : limit;
+        if (body == this.readBuffer) {
+            this.readBuffer.limit(end);
+        }
+        MethodCallMessage message;
+        try {
+            message = this.codec.decode(header, body);
+        } finally {
+            this.readBuffer.limit(limit).position(end);
+        }
+
+        // streams follow their frame, large files are written by the channel directly
+        if (this.codec.getPendingStreams() > 0) {
+            StreamReceiver streams = new StreamReceiver(message);
+            try {
+                streams.transfer(this.readBuffer, this.channel);
+            } catch (IOException e) {
+                streams.discard();
+                throw e;
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Parses whatever the channel has to offer until a message is complete.
+     * Messages that were completed by the same read are kept for the next call.
+     */
+    private MethodCallMessage readText() throws IOException {
+        while (this.parsed.isEmpty()) {
+            this.readBuffer.clear();
+            int read = this.channel.read(this.readBuffer);
+            this.readBuffer.flip();
+            if (read < 0) {
+                this.parser.finish(this.parsed::add);
+                break;
+            }
+            this.parser.feed(this.readBuffer, this.parsed::add);
+        }
+        return this.parsed.poll();
+    }
+
+    /**
+     * Reads from the channel until the read buffer holds at least the given amount of bytes.
+     * @return False when the peer closed the connection before any byte was read
+     */
+    private boolean fill(int bytes) throws IOException {
+        while (this.readBuffer.remaining() < bytes) {
+            this.readBuffer.compact();
+            int read = this.channel.read(this.readBuffer);
+            this.readBuffer.flip();
+            if (read < 0) {
+                if (this.readBuffer.hasRemaining()) throw new EOFException("Connection closed in the middle of a frame");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+            // connection is discarded either way
+        }
+    }
+
+    /**
+     * The peer accepted the connection, but closed it or did not answer with a binary hello.
+     */
+    static final class HelloRejectedException extends IOException {
+        HelloRejectedException(IOException cause) {
+            super("Peer rejected the binary hello: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Keeps keep-alive connections per destination, so sending a message does not
+ * require a new TCP handshake (and a new ephemeral port) every time.
+ * <p>
+ * At most {@code maxPerDestination} connections are open to a single destination,
+ * borrowers wait when all of them are in use. Connections that have been idle for
+ * longer than {@code idleTimeoutMillis} are closed, and every connection is checked
+ * before it is handed out again. New connections use the pool's {@link WireFormat}, and
+ * unless it is text they offer the pool's {@link MessageCodec}, which can differ per destination.
+ */
+public final class ConnectionPool {
+    public static final int DEFAULT_MAX_PER_DESTINATION = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30_000;
+
+    private final int maxPerDestination;
+    private final long idleTimeoutMillis;
+    private final WireFormat wireFormat;
+    private final MessageCodec codec;
+    private final Map<NetworkAddress, MessageCodec> codecs;
+    private final Map<NetworkAddress, Destination> destinations;
+
+    // -- CONSTRUCTORS ---------------------
+    public ConnectionPool() {
+        this(DEFAULT_MAX_PER_DESTINATION, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new connection pool.
+     * @param maxPerDestination Maximum amount of open connections to a single destination
+     * @param idleTimeoutMillis Time after which an unused connection is closed
+     */
+    public ConnectionPool(int maxPerDestination, long idleTimeoutMillis) {
+        this(maxPerDestination, idleTimeoutMillis, WireFormat.BINARY);
+    }
+
+    /**
+     * Constructs a new connection pool.
+     * @param maxPerDestination Maximum amount of open connections to a single destination
+     * @param idleTimeoutMillis Time after which an unused connection is closed
+     * @param wireFormat Encoding of the messages on new connections
+     */
+    public ConnectionPool(int maxPerDestination, long idleTimeoutMillis, WireFormat wireFormat) {
+        this(maxPerDestination, idleTimeoutMillis, wireFormat, MessageCodecs.DEFAULT);
+    }
+
+    /**
+     * Constructs a new connection pool.
+     * @param maxPerDestination Maximum amount of open connections to a single destination
+     * @param idleTimeoutMillis Time after which an unused connection is closed
+     * @param wireFormat Encoding of the messages on new connections
+     * @param codec Name of the codec new connections offer, see {@link MessageCodecs}
+     * @throws IllegalArgumentException Thrown when there is no codec with the name
+     */
+    public ConnectionPool(int maxPerDestination, long idleTimeoutMillis, WireFormat wireFormat, String codec) {
+        if (maxPerDestination < 1)
+            throw new IllegalArgumentException("A destination needs at least one connection");
+
+        this.maxPerDestination = maxPerDestination;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.wireFormat = wireFormat;
+        this.codec = MessageCodecs.forName(codec);
+        this.codecs = new ConcurrentHashMap<>();
+        this.destinations = new ConcurrentHashMap<>();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Borrows a connection to the given address, opening a new one when no healthy idle one is available.
+     * Every borrowed connection must be handed back with {@link #release(Connection)} or {@link #discard(Connection)}.
+     * @param address The destination of the connection
+     * @return A connection that is ready to be written to
+     * @throws IOException Thrown when a new connection could not be opened
+     */
+    Connection borrow(NetworkAddress address) throws IOException {
+        Destination destination = this.destinations.computeIfAbsent(address, a -> new Destination(this.maxPerDestination));
+        destination.permits.acquireUninterruptibly();
+
+        // reuse the most recently used healthy connection
+        long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = destination.idle.pollFirst()) != null) {
+            if (!connection.isIdleLongerThan(this.idleTimeoutMillis, now) && connection.isHealthy()) {
+                return connection;
+            }
+            connection.close();
+        }
+
+        // no idle connection left, open a new one
+        try {
+            return Connection.open(address, this.wireFormat, getCodec(address));
+        } catch (IOException e) {
+            destination.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a connection back to the pool so it can be reused.
+     * @param connection The connection that was borrowed
+     */
+    void release(Connection connection) {
+        Destination destination = this.destinations.get(connection.getAddress());
+        destination.idle.offerFirst(connection);
+        destination.permits.release();
+        evictIdle(destination);
+    }
+
+    /**
+     * Closes a borrowed connection that turned out to be broken.
+     * @param connection The connection that was borrowed
+     */
+    void discard(Connection connection) {
+        connection.close();
+        this.destinations.get(connection.getAddress()).permits.release();
+    }
+
+    WireFormat getWireFormat() {
+        return this.wireFormat;
+    }
+
+    MessageCodec getCodec(NetworkAddress address) {
+        return this.codecs.getOrDefault(address, this.codec);
+    }
+
+    /**
+     * Chooses the codec of the link to one destination, such as the fastest one for that link.
+     * Connections that are already open keep the codec they agreed on.
+     * @param address The destination
+     * @param codec Name of the codec new connections to the destination offer, see {@link MessageCodecs}
+     * @throws IllegalArgumentException Thrown when there is no codec with the name
+     */
+    public void setCodec(NetworkAddress address, String codec) {
+        this.codecs.put(address, MessageCodecs.forName(codec));
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    public void close() {
+        this.destinations.values().forEach(d -> {
+            Connection connection;
+            while ((connection = d.idle.pollFirst()) != null) {
+                connection.close();
+            }
+        });
+    }
+
+    // -- HELPER METHODS -------------------
+    private void evictIdle(Destination destination) {
+        long now = System.currentTimeMillis();
+
+        // oldest connections are at the end of the deque
+        Iterator<Connection> it = destination.idle.descendingIterator();
+        while (it.hasNext()) {
+            Connection connection = it.next();
+            if (!connection.isIdleLongerThan(this.idleTimeoutMillis, now)) break;
+            if (destination.idle.removeLastOccurrence(connection)) connection.close();
+        }
+    }
+
+    private static final class Destination {
+        private final Semaphore permits;
+        private final Deque<Connection> idle;
+
+        private Destination(int maxConnections) {
+            this.permits = new Semaphore(maxConnections);
+            this.idle = new ConcurrentLinkedDeque<>();
+        }
+    }
+}
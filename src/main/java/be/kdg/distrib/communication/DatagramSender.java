@@ -0,0 +1,95 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends encoded messages as UDP datagrams, without a connection and without waiting for the receiver.
+ * Messages to the same destination that queue up while a datagram is being sent are packed
+ * together into the next datagram, as long as it stays below {@link #MAX_PAYLOAD}.
+ * Datagrams can get lost, so this is only meant for messages that nobody waits for.
+ */
+final class DatagramSender {
+    /**
+     * Largest datagram that fits in a single Ethernet frame with room to spare for IP options and tunnels.
+     */
+    static final int MAX_PAYLOAD = 1_400;
+
+    private final DatagramChannel channel;
+    private final Map<SocketAddress, Outbox> outboxes;
+
+    // -- CONSTRUCTOR ----------------------
+    DatagramSender() throws IOException {
+        this.channel = DatagramChannel.open();
+        this.outboxes = new ConcurrentHashMap<>();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Queues a message for a destination and sends it, unless another thread is already sending to it.
+     * That thread then takes the message along in its next datagram.
+     * @param frame The encoded message, at most {@link #MAX_PAYLOAD} bytes
+     * @param address The destination of the message
+     * @throws IOException Thrown when a datagram could not be sent
+     */
+    void send(byte[] frame, NetworkAddress address) throws IOException {
+        if (frame.length > MAX_PAYLOAD)
+            throw new IllegalArgumentException("Message does not fit in a datagram");
+
+        SocketAddress destination = new InetSocketAddress(address.getIpAddress(), address.getPortNumber());
+        Outbox outbox = this.outboxes.computeIfAbsent(destination, d -> new Outbox());
+        outbox.frames.add(frame);
+
+        // check the queue again after letting go, a frame may have been added just before
+        while (!outbox.frames.isEmpty() && outbox.sending.compareAndSet(false, true)) {
+            try {
+                drain(outbox, destination);
+            } finally {
+                outbox.sending.set(false);
+            }
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    private void drain(Outbox outbox, SocketAddress destination) throws IOException {
+        ByteBuffer datagram = outbox.datagram;
+        datagram.clear();
+
+        byte[] frame;
+        while ((frame = outbox.frames.peek()) != null) {
+            if (frame.length > datagram.remaining()) {
+                flush(datagram, destination);
+            }
+            datagram.put(outbox.frames.poll());
+        }
+        flush(datagram, destination);
+    }
+
+    private void flush(ByteBuffer datagram, SocketAddress destination) throws IOException {
+        datagram.flip();
+        if (datagram.hasRemaining()) {
+            this.channel.send(datagram, destination);
+        }
+        datagram.clear();
+    }
+
+    private static final class Outbox {
+        private final Queue<byte[]> frames;
+        private final AtomicBoolean sending;
+        private final ByteBuffer datagram;
+
+        private Outbox() {
+            this.frames = new ConcurrentLinkedQueue<>();
+            this.sending = new AtomicBoolean();
+            this.datagram = ByteBuffer.allocateDirect(MAX_PAYLOAD);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Encodes and decodes the messages of one connection, as created by its {@link MessageCodec}.
+ * Every message is a frame that starts with the length of its body as a 4-byte big-endian integer,
+ * the highest bit of the length is left to the codec. Connections split the frames, the codec only
+ * writes and reads their bodies.
+ * <p>
+ * Encoding and decoding may happen on different threads, but each of them only on one thread at a time.
+ */
+public interface FrameCodec {
+    /**
+     * Encodes a message as a frame, including its length.
+     * The buffers are not used after they were written, direct buffers of the connection's pool go back to it.
+     * @param message The message that must be encoded
+     * @param out Receives the buffers of the frame, in read mode
+     * @throws IOException Thrown when the message could not be encoded
+     */
+    void encode(MethodCallMessage message, Collection<ByteBuffer> out) throws IOException;
+
+    /**
+     * Decodes the body of a frame, without its length.
+     * @param header The first 4 bytes of the frame
+     * @param body Buffer that holds exactly the body between its position and limit, it is read up to its limit
+     * @return The message
+     * @throws IOException Thrown when the body is not a valid message
+     */
+    MethodCallMessage decode(int header, ByteBuffer body) throws IOException;
+
+    /**
+     * Writes what follows the frame of the message that was encoded last and was not part of its buffers:
+     * streams of unknown length chunk by chunk as they are read, and the streams after them.
+     * Every input stream of the message is closed afterwards, also when writing failed.
+     * @param writer Writes the chunks in order, and hands each of them back to the pool
+     * @throws IOException Thrown when a stream could not be read or a chunk could not be written,
+     * the peer is in the middle of the message then and the connection can not be used anymore
+     */
+    default void writeStreams(ChunkWriter writer) throws IOException {
+    }
+
+    /**
+     * Closes the input streams of the message that was encoded last, when they will not be written
+     * because its frame could not be written.
+     */
+    default void discardStreams() {
+    }
+
+    /**
+     * @return The amount of streams that follow the frame that was decoded last, see {@link StreamReceiver}
+     */
+    default int getPendingStreams() {
+        return 0;
+    }
+
+    /**
+     * Writes the chunks of {@link #writeStreams(ChunkWriter)} on the connection.
+     */
+    @FunctionalInterface
+    interface ChunkWriter {
+        /**
+         * @param chunk A chunk in read mode, it belongs to the writer from now on even when writing fails
+         * @throws IOException Thrown when the chunk could not be written
+         */
+        void write(ByteBuffer chunk) throws IOException;
+    }
+}
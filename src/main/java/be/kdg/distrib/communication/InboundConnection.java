@@ -0,0 +1,234 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * The receiving end of a connection that was accepted by a {@link MessageServer}.
+ * Bytes are read without blocking as they arrive, replies to messages that arrived
+ * on this connection can be written back on it from any thread.
+ * Replies are written in the format the peer chose when it opened the connection,
+ * binary replies from pooled direct buffers with gathering writes.
+ * Streams of unknown length in a reply are queued one chunk at a time, the next chunk is only read
+ * once the I/O thread wrote the one before it.
+ * <p>
+ * Only the I/O thread reads from the connection and closes it, a reply that fails only marks it
+ * closing: the read buffer may still be in use until the I/O thread sees the mark.
+ */
+final class InboundConnection implements ReplyChannel {
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final MessageFramer framer;
+    private final ByteBuffer readBuffer;
+    private final Deque<ByteBuffer> writeQueue;
+    private final ByteBuffer[] gather;
+    private final Object replyLock;
+    private FrameCodec codec;
+    private boolean closing;
+
+    // -- CONSTRUCTOR ----------------------
+    InboundConnection(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+        this.framer = new MessageFramer(this::negotiated);
+        this.readBuffer = BufferPool.SHARED.acquire();
+        this.writeQueue = new ArrayDeque<>();
+        this.gather = new ByteBuffer[MAX_GATHER];
+        this.replyLock = new Object();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Reads the bytes that are available on the connection.
+     * Called by the I/O thread when the connection is readable.
+     * @param receiver Receives every message that has been completed
+     * @return False when the peer closed the connection
+     * @throws IOException Thrown when the connection failed or a message is invalid
+     */
+    boolean read(MessageFramer.MessageReceiver receiver) throws IOException {
+        MessageFramer.MessageReceiver tagged = message -> {
+            message.setReplyChannel(this);
+            receiver.receive(message);
+        };
+
+        int read;
+        while ((read = this.channel.read(this.readBuffer)) > 0) {
+            this.readBuffer.flip();
+            this.framer.feed(this.readBuffer, tagged);
+            this.readBuffer.clear();
+        }
+
+        if (read < 0) {
+            this.framer.finish(tagged);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a reply on the connection.
+     * Whatever cannot be written without blocking is written by the I/O thread
+     * once the connection becomes writable again.
+     * Replies are written one at a time, a reply with streams of unknown length holds up the next one until it was written.
+     * @param reply The reply that must be written
+     * @throws IOException Thrown when the connection has been closed, or a stream failed and closed it
+     */
+    @Override
+    public void write(MethodCallMessage reply) throws IOException {
+        synchronized (this.replyLock) {
+            FrameCodec codec;
+            synchronized (this) {
+                codec = this.codec;
+                if (codec == null) {
+                    this.writeQueue.add(ByteBuffer.wrap(MessageReaderWriter.encode(reply)));
+                    flush();
+                    return;
+                }
+                try {
+                    codec.encode(reply, this.writeQueue);
+                } catch (IOException | RuntimeException e) {
+                    // the peer would wait for the reply, and keys of it may be numbered that it never received
+                    closeLater();
+                    throw e;
+                }
+            }
+
+            try {
+                flush();
+                codec.writeStreams(this::writeChunk);
+            } catch (IOException | RuntimeException e) {
+                // the peer may be in the middle of the reply, it can not read another one
+                codec.discardStreams();
+                closeLater();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Answers the hello of the peer, all replies after it are frames of the agreed codec.
+     */
+    private synchronized void negotiated(int version, int features, MessageCodec codec, FrameCodec frames) throws IOException {
+        this.codec = frames;
+        this.writeQueue.add(ByteBuffer.wrap(BinaryMessageCodec.hello(version, features, codec.getId())));
+        flush();
+    }
+
+    /**
+     * Writes as much of the queued replies as possible.
+     * Called by the I/O thread when the connection is writable.
+     * @throws IOException Thrown when the connection has been closed
+     */
+    synchronized void flush() throws IOException {
+        if (this.closing || !this.key.isValid()) {
+            throw new IOException("Connection has been closed");
+        }
+
+        while (!this.writeQueue.isEmpty()) {
+            int count = 0;
+            long queued = 0;
+            for (ByteBuffer buffer : this.writeQueue) {
+                if (count == MAX_GATHER) break;
+                this.gather[count++] = buffer;
+                queued += buffer.remaining();
+            }
+            long written = this.channel.write(this.gather, 0, count);
+            Arrays.fill(this.gather, 0, count, null);
+
+            // buffers that were written completely go back to the pool
+            while (!this.writeQueue.isEmpty() && !this.writeQueue.peek().hasRemaining()) {
+                BufferPool.SHARED.release(this.writeQueue.poll());
+            }
+            if (written < queued) break;
+        }
+        if (this.writeQueue.isEmpty()) {
+            // a reply that waits to queue its next chunk can go on
+            notifyAll();
+        }
+
+        // only wait for the connection to become writable while there is something left
+        int ops = this.writeQueue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (this.key.interestOps() != ops) {
+            this.key.interestOps(ops);
+            this.key.selector().wakeup();
+        }
+    }
+
+    /**
+     * @return True when a reply failed and the I/O thread must close the connection
+     */
+    synchronized boolean isClosing() {
+        return this.closing;
+    }
+
+    /**
+     * Closes the connection and hands its buffers back to the pool.
+     * Called by the I/O thread only, other threads use {@link #closeLater()}.
+     */
+    synchronized void close() {
+        if (!this.channel.isOpen()) return;
+
+        notifyAll();
+        this.key.cancel();
+        BufferPool.SHARED.release(this.readBuffer);
+        this.writeQueue.forEach(BufferPool.SHARED::release);
+        this.writeQueue.clear();
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+            // connection is discarded either way
+        }
+    }
+
+    /**
+     * Marks the connection closing, and wakes the I/O thread to close it.
+     * Nothing is written on it anymore, queued replies are dropped.
+     */
+    private synchronized void closeLater() {
+        if (this.closing || !this.channel.isOpen()) return;
+
+        this.closing = true;
+        notifyAll();
+        this.writeQueue.forEach(BufferPool.SHARED::release);
+        this.writeQueue.clear();
+        try {
+            // a connection that is writable is selected right away
+            this.key.interestOps(SelectionKey.OP_WRITE);
+            this.key.selector().wakeup();
+        } catch (CancelledKeyException ignored) {
+            // the I/O thread closed it already
+        }
+    }
+
+    /**
+     * Queues a chunk of a stream, and waits until the I/O thread wrote everything that was queued.
+     */
+    private synchronized void writeChunk(ByteBuffer chunk) throws IOException {
+        if (this.closing || !this.channel.isOpen()) {
+            BufferPool.SHARED.release(chunk);
+            throw new IOException("Connection has been closed");
+        }
+        this.writeQueue.add(chunk);
+        flush();
+        while (!this.writeQueue.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing a stream");
+            }
+            if (this.closing || !this.channel.isOpen()) {
+                throw new IOException("Connection has been closed");
+            }
+        }
+    }
+}
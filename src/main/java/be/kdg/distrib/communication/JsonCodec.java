@@ -0,0 +1,24 @@
+package be.kdg.distrib.communication;
+
+/**
+ * Every message as a JSON object in a length-prefixed frame, see {@link JsonFrameCodec}.
+ * Meant for links to peers that already speak JSON.
+ */
+public final class JsonCodec implements MessageCodec {
+    public static final String NAME = "json";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getId() {
+        return 3;
+    }
+
+    @Override
+    public FrameCodec open(boolean compress) {
+        return new JsonFrameCodec();
+    }
+}
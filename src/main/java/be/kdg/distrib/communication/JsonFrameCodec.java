@@ -0,0 +1,350 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+
+/**
+ * Writes every message as a JSON object, inside a frame:
+ * <pre>
+ * {"callId":7,"replyOnConnection":true,"originator":{"ip":"127.0.0.1","port":5000},
+ *  "method":"testMethod","parameters":{"arg0":42,"arg1.name":"Joe","arg1.weight":71.5}}
+ * </pre>
+ * Integral values are written as integers and floating point values as numbers with a fraction,
+ * booleans as booleans, and everything else as strings: chars as themselves and byte arrays in Base64.
+ * JSON has fewer types than the binary format, so a value is decoded as an {@code int}, a {@code long},
+ * a {@code double}, a boolean or a string, and converted to the type it is read as. JSON can not carry streams.
+ * Members that are not part of a message are skipped.
+ */
+final class JsonFrameCodec implements FrameCodec {
+    private final StringBuilder text;
+    private byte[] scratch;
+    private String in;
+    private int position;
+
+    // -- CONSTRUCTOR ----------------------
+    JsonFrameCodec() {
+        this.text = new StringBuilder(256);
+        this.scratch = new byte[256];
+    }
+
+    // -- ENCODING -------------------------
+    @Override
+    public void encode(MethodCallMessage message, Collection<ByteBuffer> out) {
+        StringBuilder json = this.text;
+        json.setLength(0);
+        json.append("{\"callId\":").append(message.getCallId());
+        if (message.isReplyOnConnection()) json.append(",\"replyOnConnection\":true");
+        if (message.isOneWay()) json.append(",\"oneWay\":true");
+        if (message.isReply()) json.append(",\"reply\":true");
+        json.append(",\"originator\":{\"ip\":");
+        writeString(message.getOriginator().getIpAddress());
+        json.append(",\"port\":").append(message.getOriginator().getPortNumber());
+        json.append("},\"method\":");
+        writeString(message.getMethodName());
+
+        json.append(",\"parameters\":{");
+        Parameters parameters = message.getSortedParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) json.append(',');
+            writeString(parameters.getKey(i));
+            json.append(':');
+            writeValue(parameters.getValue(i));
+        }
+        json.append("}}");
+
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        out.add(ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip());
+    }
+
+    private void writeValue(ParameterValue value) {
+        switch (value.getType()) {
+            case BOOLEAN:
+                this.text.append(value.asBoolean());
+                break;
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                this.text.append(value.asLong());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                double number = value.asDouble();
+                if (Double.isFinite(number)) {
+                    // the text of a float is shorter than the text of the double it widens to
+                    this.text.append(value);
+                } else {
+                    writeString(value.toString());
+                }
+                break;
+            case STREAM:
+                throw new IllegalArgumentException("Streamed parameters need the binary codec");
+            default:
+                String string = value.toString();
+                if (string == null) {
+                    this.text.append("null");
+                } else {
+                    writeString(string);
+                }
+                break;
+        }
+    }
+
+    private void writeString(String value) {
+        StringBuilder json = this.text;
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    // -- DECODING -------------------------
+    @Override
+    public MethodCallMessage decode(int header, ByteBuffer body) throws IOException {
+        if (BinaryMessageCodec.isCompressed(header)) {
+            throw new IOException("Compressed frame on a connection without compression");
+        }
+
+        int length = body.remaining();
+        if (length > this.scratch.length) {
+            this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+        }
+        body.get(this.scratch, 0, length);
+        this.in = new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+        this.position = 0;
+        try {
+            return readMessage();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Invalid JSON message at " + this.position, e);
+        } finally {
+            this.in = null;
+        }
+    }
+
+    private MethodCallMessage readMessage() throws IOException {
+        long callId = 0;
+        boolean replyOnConnection = false;
+        boolean oneWay = false;
+        boolean reply = false;
+        String ipAddress = null;
+        int port = 0;
+        String methodName = null;
+        Parameters parameters = new Parameters();
+
+        expect('{');
+        if (!tryRead('}')) {
+            do {
+                String member = readString();
+                expect(':');
+                switch (member) {
+                    case "callId":
+                        callId = readLong();
+                        break;
+                    case "replyOnConnection":
+                        replyOnConnection = readValue().asBoolean();
+                        break;
+                    case "oneWay":
+                        oneWay = readValue().asBoolean();
+                        break;
+                    case "reply":
+                        reply = readValue().asBoolean();
+                        break;
+                    case "originator":
+                        expect('{');
+                        if (!tryRead('}')) {
+                            do {
+                                String field = readString();
+                                expect(':');
+                                if ("ip".equals(field)) ipAddress = readString();
+                                else if ("port".equals(field)) port = (int) readLong();
+                                else skipValue();
+                            } while (tryRead(','));
+                            expect('}');
+                        }
+                        break;
+                    case "method":
+                        methodName = readString();
+                        break;
+                    case "parameters":
+                        expect('{');
+                        if (!tryRead('}')) {
+                            do {
+                                String key = readString();
+                                expect(':');
+                                parameters.put(key, readValue());
+                            } while (tryRead(','));
+                            expect('}');
+                        }
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+            } while (tryRead(','));
+            expect('}');
+        }
+        skipWhitespace();
+        if (this.position != this.in.length()) {
+            throw new IOException("Frame length does not match its message");
+        }
+        if (ipAddress == null || methodName == null) {
+            throw new IOException("JSON message lacks its originator or method");
+        }
+
+        MethodCallMessage message = new MethodCallMessage(NetworkAddress.parse(ipAddress, port), methodName, parameters);
+        message.setCallId(callId);
+        message.setReplyOnConnection(replyOnConnection);
+        message.setOneWay(oneWay);
+        message.setReply(reply);
+        return message;
+    }
+
+    private ParameterValue readValue() throws IOException {
+        skipWhitespace();
+        char c = this.in.charAt(this.position);
+        if (c == '"') return ParameterValue.of(readString());
+        if (this.in.startsWith("true", this.position)) {
+            this.position += 4;
+            return ParameterValue.of(true);
+        }
+        if (this.in.startsWith("false", this.position)) {
+            this.position += 5;
+            return ParameterValue.of(false);
+        }
+        if (this.in.startsWith("null", this.position)) {
+            this.position += 4;
+            return ParameterValue.of((String) null);
+        }
+
+        int start = skipNumber();
+        boolean fraction = false;
+        for (int i = start; i < this.position; i++) {
+            char digit = this.in.charAt(i);
+            fraction |= digit == '.' || digit == 'e' || digit == 'E';
+        }
+        if (fraction) {
+            return ParameterValue.of(Double.parseDouble(this.in.substring(start, this.position)));
+        }
+        // integers are parsed where they are, without cutting them out first
+        long integral = Long.parseLong(this.in, start, this.position, 10);
+        return integral == (int) integral ? ParameterValue.of((int) integral) : ParameterValue.of(integral);
+    }
+
+    private long readLong() throws IOException {
+        int start = skipNumber();
+        return Long.parseLong(this.in, start, this.position, 10);
+    }
+
+    /**
+     * @return Where the number that was skipped starts, it ends at the position
+     */
+    private int skipNumber() throws IOException {
+        skipWhitespace();
+        int start = this.position;
+        while (this.position < this.in.length() && "+-0123456789.eE".indexOf(this.in.charAt(this.position)) >= 0) {
+            this.position++;
+        }
+        if (start == this.position) throw new IOException("Expected a value at " + start);
+        return start;
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        int start = this.position;
+        while (true) {
+            char c = this.in.charAt(this.position);
+            if (c == '"') {
+                // strings without escapes are cut out at once
+                String value = this.in.substring(start, this.position);
+                this.position++;
+                return value;
+            }
+            if (c == '\\') break;
+            this.position++;
+        }
+
+        StringBuilder value = new StringBuilder(this.in.substring(start, this.position));
+        while (true) {
+            char c = this.in.charAt(this.position++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escaped = this.in.charAt(this.position++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    value.append((char) Integer.parseInt(this.in, this.position, this.position + 4, 16));
+                    this.position += 4;
+                    break;
+                default: value.append(escaped); break;
+            }
+        }
+    }
+
+    /**
+     * Skips a value of a member that is not part of a message, including nested objects and arrays.
+     */
+    private void skipValue() throws IOException {
+        skipWhitespace();
+        char c = this.in.charAt(this.position);
+        if (c == '{' || c == '[') {
+            char end = c == '{' ? '}' : ']';
+            this.position++;
+            if (tryRead(end)) return;
+            do {
+                if (c == '{') {
+                    readString();
+                    expect(':');
+                }
+                skipValue();
+            } while (tryRead(','));
+            expect(end);
+        } else {
+            readValue();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (!tryRead(expected)) {
+            throw new IOException("Expected '" + expected + "' at " + this.position);
+        }
+    }
+
+    private boolean tryRead(char expected) {
+        skipWhitespace();
+        if (this.position < this.in.length() && this.in.charAt(this.position) == expected) {
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.in.length() && Character.isWhitespace(this.in.charAt(this.position))) {
+            this.position++;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Numbers the keys that are sent on a connection, such as method names and parameter paths,
+ * so a key only has to be sent in full the first time.
+ * <p>
+ * A connection has a dictionary on both ends, each with a half for the keys it sends and a half
+ * for the keys it receives. The sending half of one end and the receiving half of the other see
+ * the same keys in the same order and apply the same rules, so they always agree on the numbers
+ * without ever exchanging them. At most {@code capacity} keys are numbered, when a new key arrives
+ * in a full dictionary it takes over the number of the least recently used key.
+ */
+final class KeyDictionary {
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final LinkedHashMap<String, Integer> sent;
+    private final LinkedHashMap<Integer, String> received;
+
+    // -- CONSTRUCTOR ----------------------
+    KeyDictionary(int capacity) {
+        this.capacity = capacity;
+        this.sent = new LinkedHashMap<>(16, 0.75f, true);
+        this.received = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Looks up the number of a key that is about to be sent, and numbers it when it is new.
+     * @param key The key
+     * @return The number of the key, or 0 when it is new and must be sent in full
+     */
+    int send(String key) {
+        Integer id = this.sent.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        this.sent.put(key, nextId(this.sent.values().iterator(), this.sent.size()));
+        return 0;
+    }
+
+    /**
+     * Looks up a key that was received by its number.
+     * @param id The number of the key
+     * @return The key
+     * @throws IOException Thrown when the number is unknown
+     */
+    String receive(int id) throws IOException {
+        String key = this.received.get(id);
+        if (key == null) {
+            throw new IOException("Unknown key " + id);
+        }
+        return key;
+    }
+
+    /**
+     * Numbers a key that was received in full.
+     * @param key The key
+     */
+    void received(String key) {
+        int id = nextId(this.received.keySet().iterator(), this.received.size());
+        this.received.put(id, key);
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Hands out a new number, or takes the number of the least recently used key when the dictionary is full.
+     */
+    private int nextId(Iterator<Integer> leastRecentlyUsed, int size) {
+        if (size < this.capacity) {
+            return size + 1;
+        }
+
+        int id = leastRecentlyUsed.next();
+        leastRecentlyUsed.remove();
+        return id;
+    }
+}
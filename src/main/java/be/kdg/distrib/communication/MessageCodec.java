@@ -0,0 +1,38 @@
+package be.kdg.distrib.communication;
+
+/**
+ * Encodes the messages of the connections that agreed on it when they were opened, such as {@code binary}.
+ * Codecs are found with {@link java.util.ServiceLoader}, so a new codec only has to be
+ * listed in {@code META-INF/services/be.kdg.distrib.communication.MessageCodec} to be picked up.
+ * <p>
+ * A client offers a codec in its hello, the server answers with the codec both sides will use.
+ * Servers that do not know the offered codec answer with {@link MessageCodecs#DEFAULT}.
+ *
+ * @see MessageCodecs
+ * @see FrameCodec
+ */
+public interface MessageCodec {
+    /**
+     * @return The name the codec is chosen by, such as {@code json}
+     */
+    String getName();
+
+    /**
+     * @return The number that identifies the codec in a hello, from 1 up to 127 and unique among all codecs
+     */
+    int getId();
+
+    /**
+     * @return True when the codec can compress large frames, see {@link WireFormat#COMPRESSED}
+     */
+    default boolean supportsCompression() {
+        return false;
+    }
+
+    /**
+     * Creates the codec of a single connection, it may keep state between the messages of the connection.
+     * @param compress True when both sides agreed to compress large frames
+     * @return The codec of the connection
+     */
+    FrameCodec open(boolean compress);
+}
@@ -0,0 +1,119 @@
+package be.kdg.distrib.communication;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds codecs by name or by their number in a hello, among the codecs that are registered with {@link ServiceLoader}.
+ */
+public final class MessageCodecs {
+    /**
+     * The codec of connections that do not choose one, and the answer to unknown codecs.
+     */
+    public static final String DEFAULT = BinaryCodec.NAME;
+    /**
+     * The largest frame that is received unless another maximum is set with {@link #setMaxFrameSize(int)}.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 << 20;
+    /**
+     * The largest stream that is received unless another maximum is set with {@link #setMaxStreamSize(long)}.
+     */
+    public static final long DEFAULT_MAX_STREAM_SIZE = 1L << 30;
+
+    private static final MessageCodec[] BY_ID = new MessageCodec[128];
+    private static final Map<String, MessageCodec> BY_NAME = load();
+    private static volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private static volatile long maxStreamSize = DEFAULT_MAX_STREAM_SIZE;
+
+    private MessageCodecs() {
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Finds a codec by its name.
+     * @param name The name of the codec, such as {@code json}
+     * @return The codec
+     * @throws IllegalArgumentException Thrown when no codec has the name
+     */
+    public static MessageCodec forName(String name) {
+        MessageCodec codec = name == null ? null : BY_NAME.get(name.toLowerCase());
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec named " + name);
+        }
+        return codec;
+    }
+
+    /**
+     * @return The names of all codecs, sorted
+     */
+    public static Set<String> getNames() {
+        return Collections.unmodifiableSet(BY_NAME.keySet());
+    }
+
+    /**
+     * Limits the size of the frames that are received in any codec, after they are decompressed.
+     * A connection that announces a larger frame, or whose frame inflates to more, is closed
+     * before the frame is read into memory. Other connections are not affected.
+     * @param bytes The maximum size of a frame in bytes
+     * @throws IllegalArgumentException Thrown when the size is not positive
+     */
+    public static void setMaxFrameSize(int bytes) {
+        if (bytes < 1)
+            throw new IllegalArgumentException("A frame must be allowed at least one byte");
+        maxFrameSize = bytes;
+    }
+
+    /**
+     * @return The maximum size of a received frame in bytes
+     */
+    public static int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Limits the size of each stream that follows a received frame.
+     * A connection that announces a larger stream, or whose chunks add up to more, is closed
+     * and the bytes it sent of the message so far are deleted. Other connections are not affected.
+     * @param bytes The maximum size of a stream in bytes
+     * @throws IllegalArgumentException Thrown when the size is negative
+     */
+    public static void setMaxStreamSize(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("The size of a stream can not be negative");
+        maxStreamSize = bytes;
+    }
+
+    /**
+     * @return The maximum size of a received stream in bytes
+     */
+    public static long getMaxStreamSize() {
+        return maxStreamSize;
+    }
+
+    /**
+     * Finds the codec a hello refers to.
+     * @param id The number of the codec
+     * @return The codec, or null when there is no codec with the number
+     */
+    static MessageCodec forId(int id) {
+        return id > 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
+    // -- HELPER METHODS -------------------
+    private static Map<String, MessageCodec> load() {
+        Map<String, MessageCodec> codecs = new TreeMap<>();
+        for (MessageCodec codec : ServiceLoader.load(MessageCodec.class, MessageCodec.class.getClassLoader())) {
+            int id = codec.getId();
+            if (id < 1 || id >= BY_ID.length || BY_ID[id] != null || codecs.containsKey(codec.getName())) {
+                System.err.println("Ignoring codec " + codec.getName() + " with number " + id);
+                continue;
+            }
+            BY_ID[id] = codec;
+            codecs.put(codec.getName(), codec);
+        }
+        return codecs;
+    }
+}
@@ -0,0 +1,221 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes that arrive on a connection into complete messages.
+ * A message ends at an end-of-message token outside of a quoted value,
+ * or at the end of the stream for senders that close the connection after every message.
+ * Bytes may arrive in chunks of any size, text is parsed as it arrives by a {@link TextMessageParser}.
+ * <p>
+ * A connection that starts with a binary hello switches to length-prefixed frames in the
+ * {@link MessageCodec} the hello offers, or the default codec when the offered one is unknown. A message with streams is received once its streams followed it,
+ * see {@link StreamReceiver}.
+ */
+final class MessageFramer {
+    private final Negotiator negotiator;
+    private final TextMessageParser parser;
+    private final byte[] helloBytes;
+    private int length;
+    private boolean started;
+    private boolean hello;
+    private FrameCodec codec;
+    private ByteBuffer pending;
+    private StreamReceiver streams;
+
+    // -- CONSTRUCTORS ---------------------
+    /**
+     * Creates a framer for text messages only, such as the messages in a datagram.
+     */
+    MessageFramer() {
+        this(null);
+    }
+
+    /**
+     * Creates a framer for a connection that may switch to binary frames.
+     * @param negotiator Answers the hello of the peer, before any message of the connection is received
+     */
+    MessageFramer(Negotiator negotiator) {
+        this.negotiator = negotiator;
+        this.parser = new TextMessageParser();
+        this.helloBytes = new byte[BinaryMessageCodec.HELLO_SIZE];
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Consumes the readable bytes of a buffer.
+     * @param buffer Buffer in read mode
+     * @param receiver Receives every message that has been completed by these bytes
+     * @throws IOException Thrown when a completed message is invalid
+     */
+    void feed(ByteBuffer buffer, MessageReceiver receiver) throws IOException {
+        if (!this.started && buffer.hasRemaining()) {
+            this.started = true;
+            this.hello = this.negotiator != null && buffer.get(buffer.position()) == BinaryMessageCodec.HELLO_START;
+        }
+        if (this.hello) {
+            feedHello(buffer);
+        }
+        if (this.codec != null) {
+            feedBinary(buffer, receiver);
+            return;
+        }
+
+        this.parser.feed(buffer, receiver);
+    }
+
+    /**
+     * Completes the message that was still being received when the stream ended.
+     * @param receiver Receives the last message, if the stream did not end between two messages
+     * @throws IOException Thrown when the last message is invalid
+     */
+    void finish(MessageReceiver receiver) throws IOException {
+        if (this.codec != null || this.hello) {
+            if (this.streams != null) {
+                this.streams.discard();
+                this.streams = null;
+                throw new IOException("Connection closed in the middle of a stream");
+            }
+            if (this.length > 0 || (this.pending != null && this.pending.position() > 0))
+                throw new IOException("Connection closed in the middle of a frame");
+            return;
+        }
+        this.parser.finish(receiver);
+    }
+
+    // -- HELPER METHODS -------------------
+    private void feedHello(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && this.length < BinaryMessageCodec.HELLO_SIZE) {
+            this.helloBytes[this.length++] = buffer.get();
+        }
+        if (this.length < BinaryMessageCodec.HELLO_SIZE) return;
+
+        int version = BinaryMessageCodec.readHello(this.helloBytes);
+        MessageCodec codec = MessageCodecs.forId(BinaryMessageCodec.readCodec(this.helloBytes));
+        if (codec == null) {
+            // the answer tells the client which codec it got instead
+            codec = MessageCodecs.forName(MessageCodecs.DEFAULT);
+        }
+        int features = codec.supportsCompression() ? BinaryMessageCodec.readFeatures(this.helloBytes) : 0;
+        this.length = 0;
+        this.hello = false;
+        this.codec = codec.open((features & BinaryMessageCodec.FEATURE_DEFLATE) != 0);
+        this.pending = ByteBuffer.allocate(1024);
+        this.negotiator.negotiated(version, features, codec, this.codec);
+    }
+
+    private void feedBinary(ByteBuffer buffer, MessageReceiver receiver) throws IOException {
+        while (buffer.hasRemaining()) {
+            // the streams of the last message come before the next frame
+            if (this.streams != null) {
+                try {
+                    this.streams.feed(buffer);
+                } catch (IOException e) {
+                    // the connection is closed, nothing else will release the files of the message
+                    this.streams.discard();
+                    this.streams = null;
+                    throw e;
+                }
+                if (!this.streams.isComplete()) return;
+
+                MethodCallMessage message = this.streams.getMessage();
+                this.streams = null;
+                receiver.receive(message);
+                continue;
+            }
+
+            // a frame that arrived completely is decoded where it is, without copying it
+            if (this.pending.position() == 0 && buffer.remaining() >= 4) {
+                int header = buffer.getInt(buffer.position());
+                int frameLength = BinaryMessageCodec.frameLength(header);
+                if (buffer.remaining() >= 4 + frameLength) {
+                    int limit = buffer.limit();
+                    int end = buffer.position() + 4 + frameLength;
+                    buffer.position(buffer.position() + 4).limit(end);
+                    MethodCallMessage message;
+                    try {
+                        message = this.codec.decode(header, buffer);
+                    } finally {
+                        buffer.limit(limit).position(end);
+                    }
+                    deliver(message, receiver);
+                    continue;
+                }
+            }
+
+            // otherwise it is collected until the rest arrives, the length comes first
+            if (this.pending.position() < 4) {
+                this.pending.put(buffer.get());
+                if (this.pending.position() == 4) {
+                    ensurePendingCapacity(4 + BinaryMessageCodec.frameLength(this.pending.getInt(0)));
+                }
+                continue;
+            }
+
+            int header = this.pending.getInt(0);
+            int missing = 4 + BinaryMessageCodec.frameLength(header) - this.pending.position();
+            int count = Math.min(missing, buffer.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + count);
+            this.pending.put(buffer);
+            buffer.limit(limit);
+
+            if (count == missing) {
+                this.pending.flip().position(4);
+                MethodCallMessage message;
+                try {
+                    message = this.codec.decode(header, this.pending);
+                } finally {
+                    this.pending.clear();
+                }
+                deliver(message, receiver);
+            }
+        }
+    }
+
+    /**
+     * Receives a decoded message, or starts receiving its streams first.
+     */
+    private void deliver(MethodCallMessage message, MessageReceiver receiver) throws IOException {
+        if (this.codec.getPendingStreams() > 0) {
+            StreamReceiver streams = new StreamReceiver(message);
+            if (!streams.isComplete()) {
+                this.streams = streams;
+                return;
+            }
+        }
+        receiver.receive(message);
+    }
+
+    private void ensurePendingCapacity(int capacity) {
+        if (capacity > this.pending.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(capacity, this.pending.capacity() * 2));
+            this.pending.flip();
+            larger.put(this.pending);
+            this.pending = larger;
+        }
+    }
+
+    /**
+     * Switches the connection of a {@link MessageFramer} to frames.
+     */
+    interface Negotiator {
+        /**
+         * Called when the peer sent a binary hello, before any of its messages is received.
+         * @param version The version both sides use
+         * @param features The features both sides support
+         * @param codec The codec both sides use
+         * @param frames The codec of the connection, its decoder is used by the framer
+         * @throws IOException Thrown when the hello could not be answered
+         */
+        void negotiated(int version, int features, MessageCodec codec, FrameCodec frames) throws IOException;
+    }
+
+    /**
+     * Receives the messages completed by a {@link MessageFramer}.
+     */
+    interface MessageReceiver {
+        void receive(MethodCallMessage message) throws IOException;
+    }
+}
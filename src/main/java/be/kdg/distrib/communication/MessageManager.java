@@ -10,32 +10,102 @@ package be.kdg.distrib.communication;
 import be.kdg.distrib.logger.Logger;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Creates a new network address and contains utilities to send and receive messages.
+ * Outgoing messages reuse keep-alive connections from a {@link ConnectionPool},
+ * incoming connections are kept open and read without blocking by a {@link MessageServer}.
+ * Replies to calls made with {@link #request} or {@link #call} are handed to the
+ * thread that made the call, so a MessageManager can be shared by concurrent callers.
+ * Small messages that need no reply can also be sent as UDP datagrams with {@link #sendDatagram},
+ * they are only received by managers that called {@link #listenDatagrams()}.
  *
  * @see NetworkAddress
  */
 public final class MessageManager {
-    private ServerSocket serverSocket;
-    private NetworkAddress myAddress;
+    public static final int DEFAULT_IO_THREADS = 1;
+
+    private MessageServer server;
+    private volatile NetworkAddress myAddress;
+    private final ConnectionPool connectionPool;
+    private final BlockingQueue<MethodCallMessage> inbox;
+    private final PendingCalls pendingCalls;
+    private final Map<NetworkAddress, CompletableFuture<MultiplexedConnection>> multiplexedConnections;
+    private DatagramSender datagramSender;
 
     /**
      * Constructs a new MessageManager object.
      * A server socket is created on a random port.
      */
     public MessageManager() {
+        this(new ConnectionPool());
+    }
+
+    /**
+     * Constructs a new MessageManager object that sends its messages over the given pool.
+     * A server socket is created on a random port.
+     *
+     * @param connectionPool the pool that holds the outgoing connections.
+     */
+    public MessageManager(ConnectionPool connectionPool) {
+        this(connectionPool, DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Constructs a new MessageManager object that sends its messages over the given pool.
+     * A server socket is created on a random port, its connections are read by the given amount of threads.
+     *
+     * @param connectionPool the pool that holds the outgoing connections.
+     * @param ioThreads      the amount of threads that read incoming connections.
+     */
+    public MessageManager(ConnectionPool connectionPool, int ioThreads) {
+        this(connectionPool, ioThreads, false);
+    }
+
+    /**
+     * Constructs a new MessageManager object that sends its messages over the given pool.
+     * A server socket is created on a random port, its connections are read by the given amount of threads.
+     * With reusePort, every thread binds its own server socket to that port, so connections are
+     * also accepted by all threads instead of one.
+     *
+     * @param connectionPool the pool that holds the outgoing connections.
+     * @param ioThreads      the amount of threads that accept and read incoming connections.
+     * @param reusePort      true to give every thread its own server socket (SO_REUSEPORT).
+     */
+    public MessageManager(ConnectionPool connectionPool, int ioThreads, boolean reusePort) {
+        this(connectionPool, ioThreads, reusePort, new InetSocketAddress(0));
+    }
+
+    /**
+     * Constructs a new MessageManager object whose server socket is bound to the given address.
+     * Without an address no socket is opened at all, the manager only receives messages on the
+     * sockets and channels it is told to listen on later, and its own address has port 0.
+     *
+     * @param connectionPool the pool that holds the outgoing connections.
+     * @param ioThreads      the amount of threads that accept and read incoming connections.
+     * @param reusePort      true to give every thread its own server socket (SO_REUSEPORT).
+     * @param address        the address of the server socket, or null to open none.
+     */
+    public MessageManager(ConnectionPool connectionPool, int ioThreads, boolean reusePort, InetSocketAddress address) {
+        this.connectionPool = connectionPool;
+        this.inbox = new LinkedBlockingQueue<>();
+        this.pendingCalls = new PendingCalls();
+        this.multiplexedConnections = new ConcurrentHashMap<>();
         try {
-            serverSocket = new ServerSocket(0);
-            InetAddress inetAddress = InetAddress.getLocalHost();
+            server = new MessageServer(ioThreads, reusePort, address, this::receive);
+            InetAddress inetAddress = isWildcard(address) ? InetAddress.getLocalHost() : address.getAddress();
             String ipAddress = inetAddress.getHostAddress();
-            int portNumber = serverSocket.getLocalPort();
+            int portNumber = server.getPort();
             myAddress = new NetworkAddress(ipAddress, portNumber);
         } catch (UnknownHostException e) {
             System.err.println("Error finding hostname");
@@ -52,22 +122,144 @@ public final class MessageManager {
         return myAddress;
     }
 
+    /**
+     * Makes sure messages sent to the address of this manager arrive. A manager that was created without
+     * a server socket opens one on a random port of every interface, which becomes its address.
+     *
+     * @return the address of this manager.
+     * @throws IOException is thrown when the socket could not be bound.
+     */
+    public synchronized NetworkAddress listenOnOwnAddress() throws IOException {
+        if (!myAddress.isUnixDomain() && myAddress.getPortNumber() == 0) {
+            InetSocketAddress bound = server.listen(new InetSocketAddress(0));
+            myAddress = new NetworkAddress(myAddress.getIpAddress(), bound.getPort());
+        }
+        return myAddress;
+    }
+
+    /**
+     * Hands a message from the same JVM directly to the receivers of this manager and waits for the reply.
+     * The message is received like any other message, but it is never encoded or sent over a socket.
+     * One-way messages are only queued.
+     *
+     * @param message the message to be delivered.
+     * @return the reply to the message, or null when the call failed or the message is one-way.
+     */
+    public MethodCallMessage deliver(MethodCallMessage message) {
+        if (message.isOneWay()) {
+            inbox.add(message);
+            return null;
+        }
+
+        CompletableFuture<MethodCallMessage> reply = new CompletableFuture<>();
+        message.setReplyOnConnection(true);
+        message.setReplyChannel(reply::complete);
+        inbox.add(message);
+        try {
+            return PendingCalls.await(reply);
+        } catch (IOException e) {
+            System.err.println("Failed to receive reply to local message");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Starts receiving messages on another TCP port as well, and datagrams on the UDP port with the same number
+     * when datagrams are received.
+     *
+     * @param port the port number.
+     * @return the address of the port, or null when it could not be bound.
+     */
+    public NetworkAddress listen(int port) {
+        return listen(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts receiving messages on another TCP socket as well, and datagrams on the UDP socket with the same address
+     * when datagrams are received.
+     *
+     * @param address the address of the socket, port 0 picks a random port.
+     * @return the address of the socket, or null when it could not be bound.
+     */
+    public NetworkAddress listen(InetSocketAddress address) {
+        try {
+            InetSocketAddress bound = server.listen(address);
+            String ipAddress = isWildcard(bound) ? myAddress.getIpAddress() : bound.getAddress().getHostAddress();
+            return new NetworkAddress(ipAddress, bound.getPort());
+        } catch (IOException e) {
+            System.err.println("Failed to create server socket on " + address);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Starts receiving messages that are sent as UDP datagrams, on the port numbers of the TCP ports.
+     * Datagrams are not received by default: any host can send them without a connection,
+     * so only managers that receive one-way messages, such as a skeleton's, should listen for them.
+     *
+     * @return true when the UDP port of the manager's address was bound.
+     */
+    public boolean listenDatagrams() {
+        try {
+            server.listenDatagrams();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to create datagram socket on port " + myAddress.getPortNumber());
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Starts receiving messages on a Unix domain socket as well, for senders on the same host.
+     *
+     * @param socketPath the path of the socket file.
+     * @return the address of the socket, or null when it could not be created.
+     */
+    public NetworkAddress listen(Path socketPath) {
+        try {
+            server.listen(socketPath);
+            return new NetworkAddress(socketPath);
+        } catch (IOException e) {
+            System.err.println("Failed to create server socket " + socketPath);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Starts receiving messages through a shared memory channel as well, for a stub on the same host.
+     *
+     * @param file the path of the file that backs the channel.
+     * @return true when the channel was created.
+     */
+    public boolean listenSharedMemory(Path file) {
+        try {
+            SharedMemoryChannel channel = SharedMemoryChannel.create(file, SharedMemoryChannel.DEFAULT_CAPACITY);
+            startDaemon("MessageManager-shm-" + file.getFileName(), () -> receiveSharedMemory(channel));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to create shared memory channel " + file);
+            e.printStackTrace();
+        }
+        return false;
+    }
+
     /**
      * Receives one message.
      * If no message is available, then the current thread is blocked until a message is available.
+     * Replies to pending calls are not received here.
      *
      * @return the received message.
      */
     public MethodCallMessage wReceive() {
         MethodCallMessage result = null;
         try {
-            Socket client = serverSocket.accept();
-            InputStream in = client.getInputStream();
-            result = MessageReaderWriter.read(in);
-            client.close();
-        } catch (IOException e) {
-            System.err.println("Failed to receive a message");
-            e.printStackTrace();
+            result = inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return result;
     }
@@ -80,13 +272,226 @@ public final class MessageManager {
      */
     public void send(MethodCallMessage message, NetworkAddress address) {
         try {
-            Socket destination = new Socket(address.getIpAddress(), address.getPortNumber());
-            OutputStream out = destination.getOutputStream();
-            MessageReaderWriter.write(message, out);
-            destination.close();
+            write(message, address);
         } catch (IOException e) {
             System.err.println("Failed to send message");
             e.printStackTrace();
         }
     }
+
+    /**
+     * Sends a message that needs no reply as a UDP datagram, without opening a connection.
+     * Messages that queue up for the same address are batched into one datagram.
+     * The message can get lost. Messages that do not fit in a datagram, and messages to
+     * a Unix domain socket, are sent over a pooled connection instead.
+     *
+     * @param message the message to be sent.
+     * @param address the destination address to which the message is sent.
+     */
+    public void sendDatagram(MethodCallMessage message, NetworkAddress address) {
+        message.setOneWay(true);
+        if (message.hasStreams()) {
+            // streams do not fit in a datagram
+            send(message, address);
+            return;
+        }
+        byte[] frame = MessageReaderWriter.encode(message);
+        if (frame.length > DatagramSender.MAX_PAYLOAD || address.isUnixDomain()) {
+            send(message, address);
+            return;
+        }
+
+        try {
+            datagramSender().send(frame, address);
+        } catch (IOException e) {
+            System.err.println("Failed to send datagram");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends a message and waits for its reply, which the receiver sends to our own address.
+     * Concurrent requests are told apart by their call ID, only a reply from the host of the address completes the call.
+     *
+     * @param message the message to be sent.
+     * @param address the destination address to which the message is sent.
+     * @return the reply to the message, or null when the call failed.
+     */
+    public MethodCallMessage request(MethodCallMessage message, NetworkAddress address) {
+        CompletableFuture<MethodCallMessage> reply = pendingCalls.register(message, address);
+        try {
+            write(message, address);
+            return PendingCalls.await(reply);
+        } catch (IOException e) {
+            pendingCalls.remove(message);
+            System.err.println("Failed to receive reply from " + address);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Sends a message and waits for the reply on the same connection.
+     * The receiver does not need to open a connection back to the originator.
+     * All calls to the same address share one connection, without waiting for each other's reply.
+     *
+     * @param message the message to be sent.
+     * @param address the destination address to which the message is sent.
+     * @return the reply to the message, or null when the call failed.
+     */
+    public MethodCallMessage call(MethodCallMessage message, NetworkAddress address) {
+        message.setReplyOnConnection(true);
+        try {
+            return multiplexedConnection(address).call(message);
+        } catch (IOException e) {
+            System.err.println("Failed to call " + address);
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Sends the reply to a received message.
+     * The reply is written on the connection of the request when the sender asked for it,
+     * otherwise it is sent to the originator of the request.
+     * Nothing is sent when the sender does not expect a reply.
+     *
+     * @param request the message that is replied to.
+     * @param reply   the reply to be sent.
+     */
+    public void reply(MethodCallMessage request, MethodCallMessage reply) {
+        if (request.isOneWay()) {
+            return;
+        }
+
+        reply.setCallId(request.getCallId());
+        reply.setReply(true);
+        ReplyChannel channel = request.getReplyChannel();
+        if (!request.isReplyOnConnection() || channel == null) {
+            send(reply, request.getOriginator());
+            return;
+        }
+
+        try {
+            channel.write(reply);
+        } catch (IOException e) {
+            System.err.println("Failed to reply to " + request.getOriginator());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Tells whether a socket address is bound to all interfaces, other hosts then reach it on our own IP-address.
+     *
+     * @param address the socket address, null when there is none.
+     * @return true when there is no address or it is the wildcard address.
+     */
+    private static boolean isWildcard(InetSocketAddress address) {
+        return address == null || address.getAddress() == null || address.getAddress().isAnyLocalAddress();
+    }
+
+    /**
+     * Hands a received message to the call that is waiting for it, or queues it for {@link #wReceive()}.
+     *
+     * @param message the message that was received.
+     */
+    private void receive(MethodCallMessage message) {
+        if (!pendingCalls.complete(message)) {
+            inbox.add(message);
+        }
+    }
+
+    /**
+     * Queues every request that arrives through a shared memory channel.
+     * Stops when the channel fails, the stub and the skeleton no longer agree on its contents.
+     *
+     * @param channel the skeleton's side of the channel.
+     */
+    private void receiveSharedMemory(SharedMemoryChannel channel) {
+        try {
+            while (true) {
+                inbox.add(channel.receive());
+            }
+        } catch (IOException e) {
+            System.err.println("Shared memory channel failed, no longer receiving on it");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a message on a pooled connection to an address.
+     *
+     * @param message the message to be sent.
+     * @param address the destination address to which the message is sent.
+     * @throws IOException is thrown when the message could not be sent.
+     */
+    private void write(MethodCallMessage message, NetworkAddress address) throws IOException {
+        Connection connection = connectionPool.borrow(address);
+        try {
+            connection.write(message);
+        } catch (IOException e) {
+            connectionPool.discard(connection);
+            throw e;
+        }
+        connectionPool.release(connection);
+    }
+
+    /**
+     * Returns the shared connection to an address, replacing it when it has been closed.
+     *
+     * @param address the destination address of the connection.
+     * @return an open connection to the address.
+     * @throws IOException is thrown when a new connection could not be opened.
+     */
+    private MultiplexedConnection multiplexedConnection(NetworkAddress address) throws IOException {
+        while (true) {
+            // the first caller opens the connection, only calls to the same address wait for it
+            CompletableFuture<MultiplexedConnection> opening = new CompletableFuture<>();
+            CompletableFuture<MultiplexedConnection> current = multiplexedConnections.putIfAbsent(address, opening);
+            if (current == null) {
+                try {
+                    MultiplexedConnection connection = new MultiplexedConnection(address, connectionPool.getWireFormat(), connectionPool.getCodec(address));
+                    opening.complete(connection);
+                    return connection;
+                } catch (IOException | RuntimeException e) {
+                    multiplexedConnections.remove(address, opening);
+                    opening.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            MultiplexedConnection connection;
+            try {
+                connection = current.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while opening a connection to " + address, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to open a connection to " + address, e.getCause());
+            }
+            if (connection.isOpen()) {
+                return connection;
+            }
+            multiplexedConnections.remove(address, current);
+        }
+    }
+
+    /**
+     * Returns the sender for datagrams, opening its channel on first use.
+     *
+     * @return the datagram sender of this manager.
+     * @throws IOException is thrown when the channel could not be opened.
+     */
+    private synchronized DatagramSender datagramSender() throws IOException {
+        if (datagramSender == null) {
+            datagramSender = new DatagramSender();
+        }
+        return datagramSender;
+    }
+
+    static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
@@ -15,6 +15,23 @@ import java.util.TreeMap;
  * Reads and writes messages from and to streams.
  */
 final class MessageReaderWriter {
+    /**
+     * Token that marks the end of a message.
+     * Messages that are not terminated explicitly end at the end of the stream.
+     */
+    static final char END_OF_MESSAGE = ';';
+
+    /**
+     * Prefix of the optional attributes that may follow the header of a message.
+     */
+    static final String ATTRIBUTE_PREFIX = "message.";
+    static final String CALL_ID_ATTRIBUTE = ATTRIBUTE_PREFIX + "callId";
+    static final String REPLY_ATTRIBUTE = ATTRIBUTE_PREFIX + "reply";
+    static final String REPLY_ON_CONNECTION = "connection";
+    static final String REPLY_NONE = "none";
+    static final String KIND_ATTRIBUTE = ATTRIBUTE_PREFIX + "kind";
+    static final String KIND_REPLY = "reply";
+
     /**
      * Reads a message from an input-stream.
      *
@@ -22,9 +39,7 @@ final class MessageReaderWriter {
      * @return the message contained in the input-stream.
      */
     public static MethodCallMessage read(InputStream in) {
-        StreamTokenizer tokenizer =
-                new StreamTokenizer(new BufferedReader(new InputStreamReader(in)));
-        tokenizer.quoteChar('\"');
+        StreamTokenizer tokenizer = createTokenizer(in);
         try {
             checkHeader(tokenizer);
             return readMessage(tokenizer);
@@ -35,6 +50,35 @@ final class MessageReaderWriter {
         return null;
     }
 
+    /**
+     * Creates a tokenizer that can read consecutive messages from the same input-stream.
+     *
+     * @param in the input-stream from which the messages are read.
+     * @return a tokenizer connected to the input-stream.
+     */
+    public static StreamTokenizer createTokenizer(InputStream in) {
+        StreamTokenizer tokenizer =
+                new StreamTokenizer(new BufferedReader(new InputStreamReader(in)));
+        tokenizer.quoteChar('\"');
+        return tokenizer;
+    }
+
+    /**
+     * Reads the next message from a tokenizer that may carry several messages.
+     *
+     * @param tokenizer connected to the stream.
+     * @return the next message, or null when the stream ended before a new message started.
+     * @throws IOException is thrown when the stream cannot be read.
+     */
+    public static MethodCallMessage readNext(StreamTokenizer tokenizer) throws IOException {
+        if (tokenizer.nextToken() == StreamTokenizer.TT_EOF) {
+            return null;
+        }
+        tokenizer.pushBack();
+        checkHeader(tokenizer);
+        return readMessage(tokenizer);
+    }
+
     /**
      * Writes a message to an output-stream.
      *
@@ -42,9 +86,46 @@ final class MessageReaderWriter {
      * @param out     the output-stream to which the message should be written.
      */
     public static void write(MethodCallMessage message, OutputStream out) {
-        PrintWriter writer = new PrintWriter(out, true);
+        write(message, createWriter(out));
+    }
+
+    /**
+     * Creates a writer that can write consecutive messages to the same output-stream.
+     *
+     * @param out the output-stream to which the messages are written.
+     * @return a writer connected to the output-stream.
+     */
+    public static PrintWriter createWriter(OutputStream out) {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)), false);
+    }
+
+    /**
+     * Writes a message, terminated by the end-of-message token, and flushes the writer.
+     *
+     * @param message the message to be written.
+     * @param writer  the writer to which the message should be written.
+     * @throws IllegalArgumentException is thrown when the message has streamed parameters, text can not carry them.
+     */
+    public static void write(MethodCallMessage message, PrintWriter writer) {
+        if (message.hasStreams()) {
+            throw new IllegalArgumentException("Streamed parameters need a binary connection");
+        }
         writeHeader(writer);
         writeMessage(message, writer);
+        writer.println(END_OF_MESSAGE);
+        writer.flush();
+    }
+
+    /**
+     * Encodes a message, terminated by the end-of-message token.
+     *
+     * @param message the message to be encoded.
+     * @return the bytes that {@link #write(MethodCallMessage, OutputStream)} would write.
+     */
+    public static byte[] encode(MethodCallMessage message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(message, out);
+        return out.toByteArray();
     }
 
     /**
@@ -82,10 +163,31 @@ final class MessageReaderWriter {
      * @throws IOException is thrown when the stream cannot be read.
      */
     private static MethodCallMessage readMessage(StreamTokenizer tokenizer) throws IOException {
-        NetworkAddress originator = readOriginator(tokenizer);
+        long callId = 0;
+        boolean replyOnConnection = false;
+        boolean oneWay = false;
+        boolean reply = false;
+        NameValuePair pair = readNameValuePair(tokenizer);
+        while (pair.getName().startsWith(ATTRIBUTE_PREFIX)) {
+            if (CALL_ID_ATTRIBUTE.equals(pair.getName())) {
+                callId = Long.parseLong(pair.getValue());
+            } else if (REPLY_ATTRIBUTE.equals(pair.getName())) {
+                replyOnConnection = REPLY_ON_CONNECTION.equals(pair.getValue());
+                oneWay = REPLY_NONE.equals(pair.getValue());
+            } else if (KIND_ATTRIBUTE.equals(pair.getName())) {
+                reply = KIND_REPLY.equals(pair.getValue());
+            }
+            pair = readNameValuePair(tokenizer);
+        }
+        NetworkAddress originator = readOriginator(pair, tokenizer);
         String methodName = readMethodName(tokenizer);
         Map<String, String> params = readParameters(tokenizer);
-        return new MethodCallMessage(originator, methodName, params);
+        MethodCallMessage message = new MethodCallMessage(originator, methodName, params);
+        message.setCallId(callId);
+        message.setReplyOnConnection(replyOnConnection);
+        message.setOneWay(oneWay);
+        message.setReply(reply);
+        return message;
     }
 
     /**
@@ -95,20 +197,42 @@ final class MessageReaderWriter {
      * @param writer  the stream.
      */
     private static void writeMessage(MethodCallMessage message, PrintWriter writer) {
+        writeAttributes(message, writer);
         writeOriginator(message.getOriginator(), writer);
         writeMethodName(message.getMethodName(), writer);
         writeParameters(message.getParameters(), writer);
     }
 
+    /**
+     * Writes the optional attributes of a message to a stream.
+     * Attributes are only written when they differ from their default value.
+     *
+     * @param message the message of which the attributes are written.
+     * @param writer  the stream.
+     */
+    private static void writeAttributes(MethodCallMessage message, PrintWriter writer) {
+        if (message.getCallId() != 0) {
+            writer.println(CALL_ID_ATTRIBUTE + " \"" + message.getCallId() + "\"");
+        }
+        if (message.isOneWay()) {
+            writer.println(REPLY_ATTRIBUTE + " \"" + REPLY_NONE + "\"");
+        } else if (message.isReplyOnConnection()) {
+            writer.println(REPLY_ATTRIBUTE + " \"" + REPLY_ON_CONNECTION + "\"");
+        }
+        if (message.isReply()) {
+            writer.println(KIND_ATTRIBUTE + " \"" + KIND_REPLY + "\"");
+        }
+    }
+
     /**
      * Reads the address of the originator of a message from a stream.
      *
+     * @param pair      the first name-value pair of the originator, already read from the stream.
      * @param tokenizer connected to the stream.
      * @return the address of the originator of the message.
      * @throws IOException is thrown when the stream cannot be read.
      */
-    private static NetworkAddress readOriginator(StreamTokenizer tokenizer) throws IOException {
-        NameValuePair pair = readNameValuePair(tokenizer);
+    private static NetworkAddress readOriginator(NameValuePair pair, StreamTokenizer tokenizer) throws IOException {
         if (!"originator.IP".equals(pair.getName())) {
             throw new IOException("stream does not contain the originator of the message");
         }
@@ -118,7 +242,7 @@ final class MessageReaderWriter {
             throw new IOException("stream does not contain the originator of the message");
         }
         int port = Integer.parseInt(pair.getValue());
-        return new NetworkAddress(ipAddress, port);
+        return NetworkAddress.parse(ipAddress, port);
     }
 
     /**
@@ -167,7 +291,7 @@ final class MessageReaderWriter {
     private static Map<String, String> readParameters(StreamTokenizer tokenizer) throws IOException {
         Map<String, String> result = new TreeMap<String, String>();
         int token = tokenizer.nextToken();
-        while (token != StreamTokenizer.TT_EOF) {
+        while (token != StreamTokenizer.TT_EOF && token != END_OF_MESSAGE) {
             tokenizer.pushBack();
             NameValuePair pair = readNameValuePair(tokenizer);
             result.put(pair.getName(), pair.getValue());
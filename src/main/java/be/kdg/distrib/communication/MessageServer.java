@@ -0,0 +1,340 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Receives messages on a server socket without blocking on any single connection.
+ * A few I/O threads each watch many connections with a {@link Selector}, and messages
+ * are framed as their bytes arrive, so a slow or stalled sender never holds up the others.
+ * <p>
+ * By default one server socket accepts all connections and spreads them over the I/O threads.
+ * With {@code reusePort} every I/O thread binds its own server socket to the same port
+ * ({@code SO_REUSEPORT}), and the kernel spreads the connections over them, so accepting
+ * connections is no longer limited to a single core.
+ * <p>
+ * The server can listen on Unix domain sockets for callers on the same host. Only when asked to,
+ * it also receives UDP datagrams on the addresses of its TCP sockets, each holding one or more
+ * messages. Datagrams come from any host without a connection, so they are not received by default.
+ */
+final class MessageServer {
+    private final int port;
+    private final boolean reusePort;
+    private final IoLoop[] loops;
+    private final MessageFramer.MessageReceiver receiver;
+    private final ByteBuffer datagramBuffer;
+    private final List<InetSocketAddress> addresses;
+    private boolean datagrams;
+    private boolean started;
+    private int nextLoop;
+
+    // -- CONSTRUCTOR ----------------------
+    /**
+     * Binds a server socket on a random port and starts the I/O threads.
+     * @param ioThreads Amount of threads that read from the accepted connections
+     * @param receiver Receives every message that arrives on one of the connections
+     * @throws IOException Thrown when the server socket could not be created
+     */
+    MessageServer(int ioThreads, boolean reusePort, MessageFramer.MessageReceiver receiver) throws IOException {
+        this(ioThreads, reusePort, new InetSocketAddress(0), receiver);
+    }
+
+    /**
+     * Binds a server socket to an address and starts the I/O threads.
+     * Without an address the threads are only started once the server listens on a socket.
+     * @param ioThreads Amount of threads that read from the accepted connections
+     * @param address Address of the server socket, or null to only listen on the sockets that are added later
+     * @param receiver Receives every message that arrives on one of the connections
+     * @throws IOException Thrown when the server socket could not be created
+     */
+    MessageServer(int ioThreads, boolean reusePort, InetSocketAddress address, MessageFramer.MessageReceiver receiver) throws IOException {
+        if (ioThreads < 1)
+            throw new IllegalArgumentException("A server needs at least one I/O thread");
+
+        this.receiver = receiver;
+        this.datagramBuffer = ByteBuffer.allocate(65_536);
+        this.addresses = new ArrayList<>();
+        this.loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            this.loops[i] = new IoLoop();
+        }
+
+        if (address == null) {
+            this.port = 0;
+            this.reusePort = false;
+        } else {
+            // the first loop accepts new connections, unless every loop has a socket of its own
+            ServerSocketChannel first = openServerChannel(address, reusePort);
+            InetSocketAddress bound = (InetSocketAddress) first.getLocalAddress();
+            this.port = bound.getPort();
+            this.reusePort = reusePort && supportsReusePort(first);
+            first.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+            if (this.reusePort) {
+                for (int i = 1; i < ioThreads; i++) {
+                    openServerChannel(bound, true).register(this.loops[i].selector, SelectionKey.OP_ACCEPT);
+                }
+            }
+            this.addresses.add(bound);
+            start();
+        }
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * @return The port of the server socket, or 0 when the server was created without one
+     */
+    int getPort() {
+        return this.port;
+    }
+
+    /**
+     * Starts accepting connections on a Unix domain socket as well.
+     * A socket file that is left behind by an earlier server is replaced.
+     * @param socketPath Path of the socket file
+     * @throws IOException Thrown when the socket could not be bound
+     */
+    void listen(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketPath));
+        channel.configureBlocking(false);
+        this.loops[0].register(channel);
+        start();
+    }
+
+    /**
+     * Starts accepting connections on another TCP socket as well, and datagrams on the UDP socket
+     * with the same address when datagrams are received.
+     * @param address The address of the socket, port 0 picks a random port
+     * @return The address the socket was bound to
+     * @throws IOException Thrown when the server socket could not be bound
+     */
+    synchronized InetSocketAddress listen(InetSocketAddress address) throws IOException {
+        ServerSocketChannel channel = openServerChannel(address, false);
+        InetSocketAddress bound = (InetSocketAddress) channel.getLocalAddress();
+        this.loops[0].register(channel);
+        this.addresses.add(bound);
+        if (this.datagrams) {
+            openDatagramChannel(bound);
+        }
+        start();
+        return bound;
+    }
+
+    /**
+     * Starts receiving datagrams on the UDP sockets with the addresses of the TCP sockets, and of the sockets that are listened on later.
+     * Does nothing when datagrams are already received.
+     * @throws IOException Thrown when the UDP socket with the address of the first TCP socket could not be bound
+     */
+    synchronized void listenDatagrams() throws IOException {
+        if (this.datagrams) return;
+
+        if (!this.addresses.isEmpty()) {
+            this.loops[0].register(bindDatagramChannel(this.addresses.get(0)));
+        }
+        this.datagrams = true;
+        for (int i = 1; i < this.addresses.size(); i++) {
+            openDatagramChannel(this.addresses.get(i));
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Starts the I/O threads, once.
+     */
+    private synchronized void start() {
+        if (this.started) return;
+
+        this.started = true;
+        for (int i = 0; i < this.loops.length; i++) {
+            MessageManager.startDaemon("MessageServer-io-" + this.port + "-" + i, this.loops[i]);
+        }
+    }
+
+    private static ServerSocketChannel openServerChannel(InetSocketAddress address, boolean reusePort) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        if (reusePort && channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        channel.bind(address);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private static DatagramChannel bindDatagramChannel(InetSocketAddress address) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(address);
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private void openDatagramChannel(InetSocketAddress address) {
+        try {
+            this.loops[0].register(bindDatagramChannel(address));
+        } catch (IOException e) {
+            // the UDP port can be taken while the TCP port was free, datagrams are optional
+            System.err.println("Failed to open datagram channel on " + address);
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean supportsReusePort(ServerSocketChannel channel) {
+        if (channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) return true;
+
+        System.err.println("SO_REUSEPORT is not supported, falling back to a single server socket");
+        return false;
+    }
+
+    private void accept(ServerSocketChannel serverChannel, IoLoop acceptingLoop) throws IOException {
+        SocketChannel client;
+        while ((client = serverChannel.accept()) != null) {
+            client.configureBlocking(false);
+            if (client.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+
+            // the kernel already spread connections over the loops when every loop has its own socket
+            IoLoop loop = acceptingLoop;
+            if (!this.reusePort) {
+                loop = this.loops[this.nextLoop];
+                this.nextLoop = (this.nextLoop + 1) % this.loops.length;
+            }
+            loop.register(client);
+        }
+    }
+
+    /**
+     * Reads all datagrams that are available, every datagram is framed on its own.
+     * Only the first loop reads datagrams, so the buffer is never shared.
+     */
+    private void receive(DatagramChannel channel) {
+        while (true) {
+            this.datagramBuffer.clear();
+            try {
+                if (channel.receive(this.datagramBuffer) == null) return;
+
+                this.datagramBuffer.flip();
+                MessageFramer framer = new MessageFramer();
+                framer.feed(this.datagramBuffer, this.receiver);
+                framer.finish(this.receiver);
+            } catch (IOException e) {
+                System.err.println("Failed to receive a datagram");
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A single I/O thread with its own selector.
+     */
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SelectableChannel> registrations;
+
+        private IoLoop() throws IOException {
+            this.selector = Selector.open();
+            this.registrations = new ConcurrentLinkedQueue<>();
+        }
+
+        /**
+         * Hands a new connection or server socket to this loop, channels are only registered by the thread of the selector.
+         */
+        private void register(SelectableChannel channel) {
+            this.registrations.add(channel);
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (this.selector.isOpen()) {
+                    this.selector.select();
+                    registerPending();
+
+                    Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                System.err.println("Message server stopped");
+                e.printStackTrace();
+            }
+        }
+
+        private void registerPending() throws IOException {
+            SelectableChannel channel;
+            while ((channel = this.registrations.poll()) != null) {
+                if (channel instanceof ServerSocketChannel) {
+                    channel.register(this.selector, SelectionKey.OP_ACCEPT);
+                    continue;
+                }
+                if (channel instanceof DatagramChannel) {
+                    channel.register(this.selector, SelectionKey.OP_READ);
+                    continue;
+                }
+                SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                key.attach(new InboundConnection((SocketChannel) channel, key));
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) return;
+
+            if (key.isAcceptable()) {
+                try {
+                    accept((ServerSocketChannel) key.channel(), this);
+                } catch (IOException e) {
+                    System.err.println("Failed to accept a connection");
+                    e.printStackTrace();
+                }
+                return;
+            }
+
+            if (key.channel() instanceof DatagramChannel) {
+                receive((DatagramChannel) key.channel());
+                return;
+            }
+
+            InboundConnection connection = (InboundConnection) key.attachment();
+            if (connection.isClosing()) {
+                // a reply failed on another thread, the read buffer is free now
+                connection.close();
+                return;
+            }
+            try {
+                if (key.isWritable()) {
+                    connection.flush();
+                }
+                if (key.isReadable() && !connection.read(receiver)) {
+                    connection.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to receive a message");
+                e.printStackTrace();
+                connection.close();
+            }
+        }
+    }
+}
@@ -14,12 +14,22 @@ import java.util.*;
  * the message contains:
  * - the originator (sender) of the message
  * - the name of the method to be called
- * - parameters (only strings are supported)
+ * - parameters, typed values that can always be read as strings
+ * - the ID of the call it belongs to, shared by a request and its reply (0 if none)
+ * - whether the reply is expected on the connection the message arrived on
+ * - whether the sender expects a reply at all
+ * - whether the message is itself the reply to a call
  */
 public final class MethodCallMessage {
     private final String methodName;
-    private final Map<String, String> parameters;
+    private final Parameters parameters;
     private final NetworkAddress originator;
+    private long callId;
+    private boolean replyOnConnection;
+    private boolean oneWay;
+    private boolean reply;
+    private ReplyChannel replyChannel;
+    private TemporaryFiles temporaryFiles;
 
     /**
      * Constructs a new message.
@@ -30,7 +40,7 @@ public final class MethodCallMessage {
     public MethodCallMessage(NetworkAddress originator, String methodName) {
         this.originator = originator;
         this.methodName = methodName;
-        this.parameters = new TreeMap<String, String>();
+        this.parameters = new Parameters();
     }
 
     /**
@@ -41,18 +51,41 @@ public final class MethodCallMessage {
      * @param parameters the parameters of the method
      */
     public MethodCallMessage(NetworkAddress originator, String methodName, Map<String, String> parameters) {
+        this(originator, methodName);
+        parameters.forEach(this::setParameter);
+    }
+
+    /**
+     * Constructs a new message with typed parameters.
+     *
+     * @param originator the sender of the message
+     * @param methodName the name of the method to be called
+     * @param parameters the parameters of the method, usually made with a {@link Parameters.Builder}
+     */
+    public MethodCallMessage(NetworkAddress originator, String methodName, Parameters parameters) {
         this.originator = originator;
         this.methodName = methodName;
         this.parameters = parameters;
     }
 
     /**
-     * Returns the parameter-value associated with the given parameter-name.
+     * Returns the parameter-value associated with the given parameter-name, as text.
      *
      * @param name the name of the parameter
      * @return the value of the parameter
      */
     public String getParameter(String name) {
+        ParameterValue value = parameters.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Returns the typed parameter-value associated with the given parameter-name.
+     *
+     * @param name the name of the parameter
+     * @return the value of the parameter, or null if there is no such parameter
+     */
+    public ParameterValue getParameterValue(String name) {
         return parameters.get(name);
     }
 
@@ -60,14 +93,186 @@ public final class MethodCallMessage {
         return methodName;
     }
 
+    /**
+     * Returns the parameters as text.
+     *
+     * @return a read-only view on the parameters, sorted by name
+     */
     public Map<String, String> getParameters() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new Iterator<Entry<String, String>>() {
+                            private int index;
+
+                            public boolean hasNext() {
+                                return index < parameters.size();
+                            }
+
+                            public Entry<String, String> next() {
+                                if (!hasNext()) throw new NoSuchElementException();
+                                int i = index++;
+                                return new SimpleImmutableEntry<>(parameters.getKey(i), parameters.getValue(i).toString());
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return parameters.size();
+                    }
+                };
+            }
+
+            @Override
+            public String get(Object key) {
+                return key instanceof String ? getParameter((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && parameters.get((String) key) != null;
+            }
+        };
+    }
+
+    /**
+     * Returns the typed parameters.
+     *
+     * @return a read-only view on the parameters, sorted by name
+     */
+    public Map<String, ParameterValue> getParameterValues() {
+        return parameters.asMap();
+    }
+
+    /**
+     * Returns the typed parameters, sorted by name.
+     *
+     * @return the parameters of this message, changes are seen by the message
+     */
+    public Parameters getSortedParameters() {
         return parameters;
     }
 
+    /**
+     * Tells whether any parameter is streamed, which only binary connections can carry.
+     *
+     * @return true when a parameter is a stream.
+     */
+    boolean hasStreams() {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.getValue(i).getType() == ParameterValue.Type.STREAM) return true;
+        }
+        return false;
+    }
+
     public NetworkAddress getOriginator() {
         return originator;
     }
 
+    public long getCallId() {
+        return callId;
+    }
+
+    /**
+     * Sets the ID that correlates a request with its reply.
+     *
+     * @param callId the ID of the call, or 0 if the message is not correlated
+     */
+    public void setCallId(long callId) {
+        this.callId = callId;
+    }
+
+    public boolean isReplyOnConnection() {
+        return replyOnConnection;
+    }
+
+    /**
+     * Marks whether the receiver should reply on the connection this message is sent on,
+     * instead of sending the reply to the originator.
+     *
+     * @param replyOnConnection true to receive the reply on the same connection
+     */
+    public void setReplyOnConnection(boolean replyOnConnection) {
+        this.replyOnConnection = replyOnConnection;
+    }
+
+    public boolean isOneWay() {
+        return oneWay;
+    }
+
+    /**
+     * Marks whether the sender does not wait for a reply, so the receiver should not send one.
+     *
+     * @param oneWay true if no reply must be sent
+     */
+    public void setOneWay(boolean oneWay) {
+        this.oneWay = oneWay;
+    }
+
+    public boolean isReply() {
+        return reply;
+    }
+
+    /**
+     * Marks the message as the reply to the call with the same call ID.
+     * Only replies are handed to callers that wait for one, any other message is received as a request.
+     *
+     * @param reply true if the message answers a call
+     */
+    public void setReply(boolean reply) {
+        this.reply = reply;
+    }
+
+    ReplyChannel getReplyChannel() {
+        return replyChannel;
+    }
+
+    void setReplyChannel(ReplyChannel replyChannel) {
+        this.replyChannel = replyChannel;
+    }
+
+    /**
+     * Returns the owner of the temporary files that hold the streams of this message.
+     *
+     * @return the owner, created on first use
+     */
+    synchronized TemporaryFiles getTemporaryFiles() {
+        if (temporaryFiles == null) {
+            temporaryFiles = new TemporaryFiles();
+        }
+        return temporaryFiles;
+    }
+
+    /**
+     * Deletes the temporary files the streams of this message were received into, and the files that
+     * {@link ParameterValue#asPath()} wrote them to. Called once the message was handled, its streams
+     * can not be read afterwards. Files that the sender passed in are never deleted, nor files that were kept.
+     */
+    public void releaseStreams() {
+        TemporaryFiles files = receivedFiles();
+        if (files != null) files.delete();
+    }
+
+    /**
+     * Leaves the temporary files of the streams of this message to whoever still uses its values,
+     * such as the caller a streamed result is returned to. They are deleted when the JVM exits.
+     */
+    public void keepStreams() {
+        TemporaryFiles files = receivedFiles();
+        if (files != null) files.keep();
+    }
+
+    /**
+     * @return the owner of the temporary files, null when no stream was received
+     */
+    private synchronized TemporaryFiles receivedFiles() {
+        return temporaryFiles;
+    }
+
     /**
      * Associates a parameter-name with a parameter-value.
      *
@@ -75,20 +280,56 @@ public final class MethodCallMessage {
      * @param value the parameter-value
      */
     public void setParameter(String name, String value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    /**
+     * Associates a parameter-name with a typed parameter-value.
+     *
+     * @param name  the parameter-name
+     * @param value the parameter-value
+     */
+    public void setParameter(String name, ParameterValue value) {
         parameters.put(name, value);
     }
 
+    public void setParameter(String name, int value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, long value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, float value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, double value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, boolean value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, char value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
+    public void setParameter(String name, byte[] value) {
+        parameters.put(name, ParameterValue.of(value));
+    }
+
     public String toString() {
         return "Message: " + originator + ", " + methodName + ", " + parameters;
     }
 
     public Map<String, String> getParametersStartingWith(String s) {
-        Set<String> keys = parameters.keySet();
+        Parameters range = parameters.startingWith(s);
         Map<String, String> result = new HashMap<>();
-        for(String key : keys) {
-            if (key.startsWith(s)) {
-                result.put(key, parameters.get(key));
-            }
+        for (int i = 0; i < range.size(); i++) {
+            result.put(range.getKey(i), range.getValue(i).toString());
         }
         return result;
     }
@@ -0,0 +1,70 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single connection that is shared by many concurrent callers.
+ * Requests are written one after another without waiting for the previous reply,
+ * a reader thread hands every reply to the caller that is waiting for it.
+ */
+final class MultiplexedConnection {
+    private final Connection connection;
+    private final PendingCalls pendingCalls;
+    private volatile boolean open;
+
+    // -- CONSTRUCTOR ----------------------
+    MultiplexedConnection(NetworkAddress address, WireFormat format, MessageCodec codec) throws IOException {
+        this.connection = Connection.open(address, format, codec);
+        this.pendingCalls = new PendingCalls();
+        this.open = true;
+        MessageManager.startDaemon("MessageManager-replies-" + address, this::readReplies);
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Writes a request and waits for its reply.
+     * @param message The request that must be sent
+     * @return The reply to the request
+     * @throws IOException Thrown when the request could not be sent or the connection was closed
+     */
+    MethodCallMessage call(MethodCallMessage message) throws IOException {
+        CompletableFuture<MethodCallMessage> reply = this.pendingCalls.register(message, null);
+        if (!this.open) {
+            this.pendingCalls.remove(message);
+            throw new IOException("Connection has been closed");
+        }
+
+        try {
+            synchronized (this.connection) {
+                this.connection.write(message);
+            }
+        } catch (IOException e) {
+            this.pendingCalls.remove(message);
+            close(e);
+            throw e;
+        }
+        return PendingCalls.await(reply);
+    }
+
+    boolean isOpen() {
+        return this.open;
+    }
+
+    // -- HELPER METHODS -------------------
+    private void readReplies() {
+        try {
+            while (this.open) {
+                this.pendingCalls.complete(this.connection.read());
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    private void close(IOException cause) {
+        this.open = false;
+        this.connection.close();
+        this.pendingCalls.failAll(cause);
+    }
+}
@@ -7,13 +7,23 @@
 
 package be.kdg.distrib.communication;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.util.Objects;
+
 /**
  * Represents an address for TCP/IP communication.
  * It contains an IP-address and a port-number.
+ * For communication on the same host it can instead contain the path of a Unix domain socket.
  */
 public final class NetworkAddress {
+    private static final String UNIX_PREFIX = "unix:";
+
     private final String ipAddress;
     private final int portNumber;
+    private final Path socketPath;
 
     /**
      * Constructs a new NetworkAddress given the IP-address and the port-number.
@@ -24,6 +34,33 @@ public final class NetworkAddress {
     public NetworkAddress(String ipAddress, int portNumber) {
         this.ipAddress = ipAddress;
         this.portNumber = portNumber;
+        this.socketPath = null;
+    }
+
+    /**
+     * Constructs a new NetworkAddress given the path of a Unix domain socket.
+     *
+     * @param socketPath the path of the socket file.
+     */
+    public NetworkAddress(Path socketPath) {
+        this.ipAddress = UNIX_PREFIX + socketPath;
+        this.portNumber = 0;
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Parses an address that was written as an IP-address and a port-number.
+     * IP-addresses with the 'unix:' prefix are read as the path of a Unix domain socket.
+     *
+     * @param ipAddress  the IP-address, or 'unix:' followed by the path of the socket.
+     * @param portNumber the port-number, ignored for Unix domain sockets.
+     * @return the parsed address.
+     */
+    static NetworkAddress parse(String ipAddress, int portNumber) {
+        if (ipAddress.startsWith(UNIX_PREFIX)) {
+            return new NetworkAddress(Path.of(ipAddress.substring(UNIX_PREFIX.length())));
+        }
+        return new NetworkAddress(ipAddress, portNumber);
     }
 
     public int getPortNumber() {
@@ -34,7 +71,44 @@ public final class NetworkAddress {
         return ipAddress;
     }
 
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    public boolean isUnixDomain() {
+        return socketPath != null;
+    }
+
+    /**
+     * Converts this address to the socket address a channel can connect to.
+     *
+     * @return a Unix domain socket address or an internet socket address.
+     */
+    SocketAddress toSocketAddress() {
+        if (isUnixDomain()) {
+            return UnixDomainSocketAddress.of(socketPath);
+        }
+        return new InetSocketAddress(ipAddress, portNumber);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NetworkAddress)) return false;
+        NetworkAddress other = (NetworkAddress) o;
+        return portNumber == other.portNumber && ipAddress.equals(other.ipAddress)
+                && Objects.equals(socketPath, other.socketPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ipAddress.hashCode() + portNumber;
+    }
+
     public String toString() {
+        if (isUnixDomain()) {
+            return ipAddress;
+        }
         return ipAddress + ":" + portNumber;
     }
 }
@@ -0,0 +1,199 @@
+package be.kdg.distrib.communication;
+
+import java.util.Map;
+
+/**
+ * The parameters of a message as a tree of their dotted names: {@code arg0.name} is the child
+ * {@code name} of the child {@code arg0} of the root. The tree is built in one pass over the parameters,
+ * after which every argument, field and nested field is found by walking down from its parent.
+ * <p>
+ * Nodes do not cut their name out of the parameter's name, they keep where it starts and ends.
+ * Names match whole segments only, the child {@code a} of the root does not hold {@code ab.x}.
+ * <p>
+ * A node with a few children finds them by comparing the hashes of their names one by one, a node with
+ * more children keeps a hash table of them, so building and walking the tree stays linear in the parameters.
+ * The hash of a name is that of {@link String#hashCode()}, computed over the segment without cutting it out.
+ */
+public final class ParameterTree {
+    private static final ParameterTree[] NO_CHILDREN = new ParameterTree[0];
+    private static final int INDEX_THRESHOLD = 8;
+
+    private final String source;
+    private final int start;
+    private final int end;
+    private final int hash;
+    private ParameterValue value;
+    private ParameterTree[] children;
+    private int childCount;
+    private ParameterTree[] index;
+    private int size;
+
+    // -- CONSTRUCTORS ---------------------
+    private ParameterTree(String source, int start, int end, int hash) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.hash = hash;
+        this.children = NO_CHILDREN;
+    }
+
+    /**
+     * @param parameters Parameters with dotted names
+     * @return The root of their tree
+     */
+    public static ParameterTree of(Parameters parameters) {
+        ParameterTree root = new ParameterTree("", 0, 0, 0);
+        for (int i = 0; i < parameters.size(); i++) {
+            root.add(parameters.getKey(i), parameters.getValue(i));
+        }
+        return root;
+    }
+
+    /**
+     * @param parameters Parameters with dotted names, the empty name is the value of the root
+     * @return The root of their tree
+     */
+    public static ParameterTree of(Map<String, ParameterValue> parameters) {
+        ParameterTree root = new ParameterTree("", 0, 0, 0);
+        parameters.forEach(root::add);
+        return root;
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * @param name Name of a child, without dots
+     * @return The child, or null when there is none with the name
+     */
+    public ParameterTree child(String name) {
+        return find(name, 0, name.length(), name.hashCode());
+    }
+
+    /**
+     * @return The value of the parameter with exactly the name of this node, or null when it only has children
+     */
+    public ParameterValue getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return The number of parameters at and below this node
+     */
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        append(text, "");
+        return text.append('}').toString();
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Adds a parameter, the names of parameters and maps are unique so every name is added once.
+     */
+    private void add(String key, ParameterValue value) {
+        ParameterTree node = this;
+        node.size++;
+        if (!key.isEmpty()) {
+            int start = 0;
+            while (true) {
+                int dot = key.indexOf('.', start);
+                int end = dot < 0 ? key.length() : dot;
+                node = node.childOf(key, start, end);
+                node.size++;
+                if (dot < 0) break;
+                start = dot + 1;
+            }
+        }
+        node.value = value;
+    }
+
+    private ParameterTree childOf(String key, int start, int end) {
+        int hash = hash(key, start, end);
+        ParameterTree child = find(key, start, end, hash);
+        if (child != null) {
+            return child;
+        }
+
+        child = new ParameterTree(key, start, end, hash);
+        if (this.childCount == this.children.length) {
+            ParameterTree[] grown = new ParameterTree[Math.max(4, this.childCount * 2)];
+            System.arraycopy(this.children, 0, grown, 0, this.childCount);
+            this.children = grown;
+        }
+        this.children[this.childCount++] = child;
+
+        if (this.index != null && this.childCount * 2 <= this.index.length) {
+            insert(this.index, child);
+        } else if (this.childCount > INDEX_THRESHOLD) {
+            // the table is at most half full, so probes stay short
+            this.index = new ParameterTree[Integer.highestOneBit(this.childCount) * 4];
+            for (int i = 0; i < this.childCount; i++) {
+                insert(this.index, this.children[i]);
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return The child with the name between start and end of the key, or null when there is none
+     */
+    private ParameterTree find(String key, int start, int end, int hash) {
+        if (this.index != null) {
+            int mask = this.index.length - 1;
+            for (int i = spread(hash) & mask; this.index[i] != null; i = (i + 1) & mask) {
+                if (this.index[i].matches(key, start, end, hash)) return this.index[i];
+            }
+            return null;
+        }
+
+        // children are mostly looked up in the order they were added, the search starts at the last one
+        for (int i = this.childCount - 1; i >= 0; i--) {
+            if (this.children[i].matches(key, start, end, hash)) return this.children[i];
+        }
+        return null;
+    }
+
+    private boolean matches(String key, int start, int end, int hash) {
+        return this.hash == hash && this.end - this.start == end - start
+                && this.source.regionMatches(this.start, key, start, end - start);
+    }
+
+    private static void insert(ParameterTree[] index, ParameterTree child) {
+        int mask = index.length - 1;
+        int i = spread(child.hash) & mask;
+        while (index[i] != null) {
+            i = (i + 1) & mask;
+        }
+        index[i] = child;
+    }
+
+    /**
+     * @return The hash {@link String#hashCode()} gives the part of the key between start and end
+     */
+    private static int hash(String key, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void append(StringBuilder text, String path) {
+        if (this.value != null) {
+            if (text.length() > 1) text.append(", ");
+            text.append(path).append('=').append(this.value);
+        }
+        for (int i = 0; i < this.childCount; i++) {
+            ParameterTree child = this.children[i];
+            String name = child.source.substring(child.start, child.end);
+            child.append(text, path.isEmpty() ? name : path + "." + name);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * The value of a single parameter of a {@link MethodCallMessage}.
+ * Primitive values are kept as raw bits next to their type, so they are neither boxed
+ * nor formatted as text until somebody asks for their text.
+ * <p>
+ * A value converts to any other type on request. A value of the requested type is returned as it is,
+ * anything else is converted through its text, the way a value that arrived as text is parsed.
+ * Objects are not values of their own, their fields are parameters with a dotted name.
+ * <p>
+ * Large binary content is a {@link Type#STREAM}, backed by a {@link ByteBuffer}, a file or an {@link InputStream}.
+ * Binary connections stream it after the message instead of putting it in the message,
+ * the receiver gets it in memory when it is small and in a temporary file otherwise.
+ */
+public final class ParameterValue {
+    /**
+     * The types a value can have.
+     */
+    public enum Type {
+        STRING, BOOLEAN, CHAR, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, BYTES, STREAM
+    }
+
+    private final Type type;
+    private final long bits;
+    private final Object reference;
+    private final TemporaryFiles owner;
+
+    // -- CONSTRUCTOR ----------------------
+    private ParameterValue(Type type, long bits, Object reference) {
+        this(type, bits, reference, null);
+    }
+
+    private ParameterValue(Type type, long bits, Object reference, TemporaryFiles owner) {
+        this.type = type;
+        this.bits = bits;
+        this.reference = reference;
+        this.owner = owner;
+    }
+
+    public static ParameterValue of(String value) {
+        return new ParameterValue(Type.STRING, 0, value);
+    }
+
+    public static ParameterValue of(boolean value) {
+        return new ParameterValue(Type.BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public static ParameterValue of(char value) {
+        return new ParameterValue(Type.CHAR, value, null);
+    }
+
+    public static ParameterValue of(byte value) {
+        return new ParameterValue(Type.BYTE, value, null);
+    }
+
+    public static ParameterValue of(short value) {
+        return new ParameterValue(Type.SHORT, value, null);
+    }
+
+    public static ParameterValue of(int value) {
+        return new ParameterValue(Type.INT, value, null);
+    }
+
+    public static ParameterValue of(long value) {
+        return new ParameterValue(Type.LONG, value, null);
+    }
+
+    public static ParameterValue of(float value) {
+        return new ParameterValue(Type.FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    public static ParameterValue of(double value) {
+        return new ParameterValue(Type.DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * @param value Bytes that are passed on by reference, they must not change while the message is in use
+     */
+    public static ParameterValue of(byte[] value) {
+        return new ParameterValue(Type.BYTES, 0, value);
+    }
+
+    /**
+     * @param value Content that is streamed from its position up to its limit, the buffer itself is left untouched
+     */
+    public static ParameterValue of(ByteBuffer value) {
+        return new ParameterValue(Type.STREAM, 0, value);
+    }
+
+    /**
+     * @param value File of which the content is streamed
+     */
+    public static ParameterValue of(Path value) {
+        return new ParameterValue(Type.STREAM, 0, value);
+    }
+
+    /**
+     * @param value Stream that is read to its end, once
+     */
+    public static ParameterValue of(InputStream value) {
+        return new ParameterValue(Type.STREAM, 0, value);
+    }
+
+    /**
+     * Creates the value of a stream that follows its message, before its content arrived.
+     * @param length Amount of bytes, or -1 when it is sent in chunks
+     */
+    static ParameterValue pendingStream(long length) {
+        return new ParameterValue(Type.STREAM, length, null);
+    }
+
+    /**
+     * Creates the value of a stream that was received.
+     * @param content The content in memory, or the temporary file it was written to
+     * @param owner Owner of the temporary files of the message, it also owns the files {@link #asPath()} writes
+     */
+    static ParameterValue received(Object content, TemporaryFiles owner) {
+        return new ParameterValue(Type.STREAM, 0, content, owner);
+    }
+
+    /**
+     * Creates the value of a string, a wrapper of a primitive type, a byte array or a stream.
+     * @param value The object
+     * @return The value of the object
+     * @throws IllegalArgumentException Thrown when the object has no value of its own
+     */
+    public static ParameterValue ofObject(Object value) {
+        if (value == null || value instanceof String) return of((String) value);
+        if (value instanceof Integer) return of((int) (Integer) value);
+        if (value instanceof Long) return of((long) (Long) value);
+        if (value instanceof Double) return of((double) (Double) value);
+        if (value instanceof Boolean) return of((boolean) (Boolean) value);
+        if (value instanceof Character) return of((char) (Character) value);
+        if (value instanceof Float) return of((float) (Float) value);
+        if (value instanceof Short) return of((short) (Short) value);
+        if (value instanceof Byte) return of((byte) (Byte) value);
+        if (value instanceof byte[]) return of((byte[]) value);
+        if (value instanceof ByteBuffer) return of((ByteBuffer) value);
+        if (value instanceof Path) return of((Path) value);
+        if (value instanceof InputStream) return of((InputStream) value);
+        throw new IllegalArgumentException("No value for objects of type " + value.getClass().getSimpleName());
+    }
+
+    // -- METHODS --------------------------
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return True for a stream of which the content did not arrive yet
+     */
+    boolean isPendingStream() {
+        return this.type == Type.STREAM && this.reference == null;
+    }
+
+    /**
+     * @return The amount of bytes of a pending stream, or -1 when it is sent in chunks
+     */
+    long getPendingLength() {
+        return this.bits;
+    }
+
+    /**
+     * @return The buffer, file or stream a stream is read from
+     */
+    Object getStreamSource() {
+        return this.reference;
+    }
+
+    public boolean asBoolean() {
+        return this.type == Type.BOOLEAN ? this.bits != 0 : Boolean.parseBoolean(toString());
+    }
+
+    public char asChar() {
+        return this.type == Type.CHAR ? (char) this.bits : toString().charAt(0);
+    }
+
+    public byte asByte() {
+        return this.type == Type.BYTE ? (byte) this.bits : Byte.parseByte(toString());
+    }
+
+    public short asShort() {
+        return this.type == Type.SHORT || this.type == Type.BYTE ? (short) this.bits : Short.parseShort(toString());
+    }
+
+    public int asInt() {
+        switch (this.type) {
+            case BYTE:
+            case SHORT:
+            case INT:
+                return (int) this.bits;
+            default:
+                return Integer.parseInt(toString());
+        }
+    }
+
+    public long asLong() {
+        switch (this.type) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return this.bits;
+            default:
+                return Long.parseLong(toString());
+        }
+    }
+
+    public float asFloat() {
+        return this.type == Type.FLOAT ? Float.intBitsToFloat((int) this.bits) : Float.parseFloat(toString());
+    }
+
+    public double asDouble() {
+        return this.type == Type.DOUBLE ? Double.longBitsToDouble(this.bits) : Double.parseDouble(toString());
+    }
+
+    /**
+     * @return The bytes of the value, a value that arrived as text is expected to be Base64
+     */
+    public byte[] asBytes() {
+        if (this.type == Type.STREAM) {
+            try (InputStream in = asInputStream()) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.type == Type.BYTES ? (byte[]) this.reference : Base64.getDecoder().decode(toString());
+    }
+
+    /**
+     * @return The content as a read-only buffer, a file is mapped into memory instead of being read
+     */
+    public ByteBuffer asByteBuffer() {
+        try {
+            if (this.reference instanceof ByteBuffer) {
+                return ((ByteBuffer) this.reference).asReadOnlyBuffer();
+            }
+            if (this.reference instanceof Path) {
+                try (FileChannel file = FileChannel.open((Path) this.reference)) {
+                    return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(asBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return A file with the content, content that is not a file yet is written to a temporary file.
+     * The file of a received stream is deleted with the message's other files, see {@link MethodCallMessage#releaseStreams()}
+     */
+    public Path asPath() {
+        if (this.reference instanceof Path) {
+            return (Path) this.reference;
+        }
+        try {
+            Path file;
+            if (this.owner != null) {
+                file = this.owner.create("parameter");
+            } else {
+                // a value of the sender's own has nobody to delete its file
+                file = Files.createTempFile("parameter", ".bin");
+                file.toFile().deleteOnExit();
+            }
+            try (InputStream in = asInputStream()) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return A stream over the content, a stream that was passed in can only be read once
+     */
+    public InputStream asInputStream() {
+        try {
+            if (this.reference instanceof InputStream) return (InputStream) this.reference;
+            if (this.reference instanceof Path) return Files.newInputStream((Path) this.reference);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer content = this.reference instanceof ByteBuffer ? asByteBuffer() : ByteBuffer.wrap(asBytes());
+        return new ByteBufferInputStream(content);
+    }
+
+    /**
+     * Converts the value to a simple type.
+     * @param type A primitive type, its wrapper, {@code String}, {@code byte[]}, {@code ByteBuffer}, {@code Path} or {@code InputStream}
+     * @return The value as the given type
+     * @throws IllegalArgumentException Thrown when the value can not be converted to the type
+     */
+    public Object as(Class<?> type) {
+        if (type == String.class) return toString();
+        if (type == int.class || type == Integer.class) return asInt();
+        if (type == long.class || type == Long.class) return asLong();
+        if (type == double.class || type == Double.class) return asDouble();
+        if (type == boolean.class || type == Boolean.class) return asBoolean();
+        if (type == char.class || type == Character.class) return asChar();
+        if (type == float.class || type == Float.class) return asFloat();
+        if (type == short.class || type == Short.class) return asShort();
+        if (type == byte.class || type == Byte.class) return asByte();
+        if (type == byte[].class) return asBytes();
+        if (type == ByteBuffer.class) return asByteBuffer();
+        if (Path.class.isAssignableFrom(type)) return asPath();
+        if (type == InputStream.class) return asInputStream();
+        throw new IllegalArgumentException("No value of type " + type.getSimpleName());
+    }
+
+    /**
+     * @return The text of the value, as the text format writes it
+     */
+    @Override
+    public String toString() {
+        switch (this.type) {
+            case STRING:
+                return (String) this.reference;
+            case BOOLEAN:
+                return String.valueOf(this.bits != 0);
+            case CHAR:
+                return String.valueOf((char) this.bits);
+            case FLOAT:
+                return Float.toString(asFloat());
+            case DOUBLE:
+                return Double.toString(asDouble());
+            case BYTES:
+                return Base64.getEncoder().encodeToString((byte[]) this.reference);
+            case STREAM:
+                // the content is not text, only describe it
+                return String.valueOf(this.reference);
+            default:
+                return Long.toString(this.bits);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParameterValue)) return false;
+
+        ParameterValue that = (ParameterValue) o;
+        return this.type == that.type && this.bits == that.bits && Objects.deepEquals(this.reference, that.reference);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * this.type.hashCode() + Long.hashCode(this.bits);
+        return 31 * hash + (this.reference instanceof byte[] ? Arrays.hashCode((byte[]) this.reference) : Objects.hashCode(this.reference));
+    }
+
+    /**
+     * Reads a buffer without copying it first.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!this.buffer.hasRemaining()) return -1;
+
+            int count = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
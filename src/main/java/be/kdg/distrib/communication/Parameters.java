@@ -0,0 +1,285 @@
+package be.kdg.distrib.communication;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The parameters of a {@link MethodCallMessage}, sorted by name in two flat arrays.
+ * A parameter costs two array slots instead of a tree node, and all parameters that share
+ * a prefix, such as the fields of one argument, are found with a binary search.
+ * <p>
+ * Decoders add parameters in sorted order, which only appends. Parameters in any other order
+ * are best collected with a {@link Builder}, which sorts them once.
+ */
+public final class Parameters {
+    private static final String[] NO_KEYS = new String[0];
+    private static final ParameterValue[] NO_VALUES = new ParameterValue[0];
+
+    private String[] keys;
+    private ParameterValue[] values;
+    private final int from;
+    private int to;
+    private final boolean view;
+
+    // -- CONSTRUCTORS ---------------------
+    public Parameters() {
+        this(NO_KEYS, NO_VALUES, 0, 0, false);
+    }
+
+    private Parameters(String[] keys, ParameterValue[] values, int from, int to, boolean view) {
+        this.keys = keys;
+        this.values = values;
+        this.from = from;
+        this.to = to;
+        this.view = view;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // -- METHODS --------------------------
+    public int size() {
+        return this.to - this.from;
+    }
+
+    public String getKey(int index) {
+        return this.keys[this.from + checkIndex(index)];
+    }
+
+    public ParameterValue getValue(int index) {
+        return this.values[this.from + checkIndex(index)];
+    }
+
+    /**
+     * @param key Name of the parameter
+     * @return The value of the parameter, or null when there is no such parameter
+     */
+    public ParameterValue get(String key) {
+        int index = search(key);
+        return index >= 0 ? this.values[index] : null;
+    }
+
+    /**
+     * Sets a parameter, appending when its name sorts after all others.
+     * @param key Name of the parameter
+     * @param value Value of the parameter
+     * @throws UnsupportedOperationException Thrown when these parameters are a range of other parameters
+     */
+    public void put(String key, ParameterValue value) {
+        if (this.view) throw new UnsupportedOperationException("A range of parameters can not be changed");
+
+        int index = this.to == 0 || this.keys[this.to - 1].compareTo(key) < 0 ? -this.to - 1 : search(key);
+        if (index >= 0) {
+            this.values[index] = value;
+            return;
+        }
+
+        index = -index - 1;
+        if (this.to == this.keys.length) {
+            int capacity = Math.max(8, this.keys.length * 2);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.to - index);
+        System.arraycopy(this.values, index, this.values, index + 1, this.to - index);
+        this.keys[index] = key;
+        this.values[index] = value;
+        this.to++;
+    }
+
+    /**
+     * Finds all parameters of which the name starts with a prefix, without copying them.
+     * @param prefix Start of the names
+     * @return A read-only range of these parameters, it sees later changes of the values but not new parameters
+     */
+    public Parameters startingWith(String prefix) {
+        int start = lowerBound(prefix);
+        int end = start;
+
+        // names with the prefix follow each other, the first one after them is the end of the range
+        int high = this.to;
+        while (end < high) {
+            int middle = (end + high) >>> 1;
+            if (this.keys[middle].startsWith(prefix)) {
+                end = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return new Parameters(this.keys, this.values, start, end, true);
+    }
+
+    /**
+     * @return A read-only map of the parameters, sorted by name
+     */
+    public Map<String, ParameterValue> asMap() {
+        return new AbstractMap<String, ParameterValue>() {
+            @Override
+            public Set<Entry<String, ParameterValue>> entrySet() {
+                return new AbstractSet<Entry<String, ParameterValue>>() {
+                    @Override
+                    public Iterator<Entry<String, ParameterValue>> iterator() {
+                        return new Iterator<Entry<String, ParameterValue>>() {
+                            private int index;
+
+                            @Override
+                            public boolean hasNext() {
+                                return this.index < size();
+                            }
+
+                            @Override
+                            public Entry<String, ParameterValue> next() {
+                                if (!hasNext()) throw new NoSuchElementException();
+                                int i = this.index++;
+                                return new SimpleImmutableEntry<>(getKey(i), getValue(i));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return Parameters.this.size();
+                    }
+                };
+            }
+
+            @Override
+            public ParameterValue get(Object key) {
+                return key instanceof String ? Parameters.this.get((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    // -- HELPER METHODS -------------------
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+        return index;
+    }
+
+    /**
+     * @return The index of the key, or -(insertion point) - 1 when it is missing
+     */
+    private int search(String key) {
+        return Arrays.binarySearch(this.keys, this.from, this.to, key);
+    }
+
+    private int lowerBound(String key) {
+        int index = search(key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Collects parameters in any order, and sorts them once they are complete.
+     */
+    public static final class Builder {
+        private String[] keys;
+        private ParameterValue[] values;
+        private int size;
+        private boolean sorted;
+
+        private Builder() {
+            reset();
+        }
+
+        public Builder add(String key, ParameterValue value) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.size * 2);
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.sorted &= this.size == 0 || this.keys[this.size - 1].compareTo(key) < 0;
+            this.keys[this.size] = key;
+            this.values[this.size] = value;
+            this.size++;
+            return this;
+        }
+
+        /**
+         * @return The parameters, a name that was added twice keeps its last value
+         */
+        public Parameters build() {
+            if (this.sorted) {
+                Parameters parameters = new Parameters(this.keys, this.values, 0, this.size, false);
+                reset();
+                return parameters;
+            }
+
+            // a stable sort keeps added values in order, so the last of equal names wins
+            int[] order = new int[this.size];
+            for (int i = 0; i < this.size; i++) order[i] = i;
+            sort(order, new int[this.size], 0, this.size, this.keys);
+
+            String[] keys = new String[this.size];
+            ParameterValue[] values = new ParameterValue[this.size];
+            int count = 0;
+            for (int i : order) {
+                if (count > 0 && keys[count - 1].equals(this.keys[i])) count--;
+                keys[count] = this.keys[i];
+                values[count] = this.values[i];
+                count++;
+            }
+            reset();
+            return new Parameters(keys, values, 0, count, false);
+        }
+
+        /**
+         * Sorts positions by the names at them, keeping equal names in order.
+         * A merge sort on plain ints, so no position is boxed to be compared.
+         */
+        private static void sort(int[] order, int[] scratch, int from, int to, String[] keys) {
+            if (to - from <= 16) {
+                for (int i = from + 1; i < to; i++) {
+                    int position = order[i];
+                    int j = i;
+                    while (j > from && keys[order[j - 1]].compareTo(keys[position]) > 0) {
+                        order[j] = order[j - 1];
+                        j--;
+                    }
+                    order[j] = position;
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            sort(order, scratch, from, middle, keys);
+            sort(order, scratch, middle, to, keys);
+            if (keys[order[middle - 1]].compareTo(keys[order[middle]]) <= 0) return;
+
+            System.arraycopy(order, from, scratch, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && keys[scratch[left]].compareTo(keys[scratch[right]]) <= 0)) {
+                    order[i] = scratch[left++];
+                } else {
+                    order[i] = scratch[right++];
+                }
+            }
+        }
+
+        /**
+         * The arrays now belong to the parameters, the builder starts over with new ones.
+         */
+        private void reset() {
+            this.keys = new String[8];
+            this.values = new ParameterValue[8];
+            this.size = 0;
+            this.sorted = true;
+        }
+    }
+}
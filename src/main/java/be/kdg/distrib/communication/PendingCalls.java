@@ -0,0 +1,203 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of calls that are waiting for their reply.
+ * Every registered call gets a unique call ID and remembers the peer it was sent to. Only a message
+ * that is marked as a reply, carries the call ID of a pending call and comes from its peer completes
+ * that call, so concurrent callers never receive each other's reply, and a request of the peer that
+ * reuses a call ID is never mistaken for a reply.
+ * <p>
+ * Peers are compared by host only: a skeleton can reply from another port than the one it was called
+ * on, and every address of this host, including Unix domain sockets, is the same peer.
+ * <p>
+ * Replies without a call ID (sent by peers that do not support them) are handed
+ * to the oldest pending call to the peer they come from.
+ */
+final class PendingCalls {
+    private static final String REPLY_METHOD_NAME = "result";
+
+    private final AtomicLong lastCallId;
+    private final ConcurrentSkipListMap<Long, Call> calls;
+
+    // -- CONSTRUCTOR ----------------------
+    PendingCalls() {
+        this.lastCallId = new AtomicLong();
+        this.calls = new ConcurrentSkipListMap<>();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Assigns a new call ID to the message and registers it as pending.
+     * @param message The message that is about to be sent
+     * @param peer The address the message is sent to, or null when replies can only come from that peer
+     * @return The future that is completed with the reply
+     */
+    CompletableFuture<MethodCallMessage> register(MethodCallMessage message, NetworkAddress peer) {
+        long callId = this.lastCallId.incrementAndGet();
+        Call call = new Call(peer);
+        message.setCallId(callId);
+        this.calls.put(callId, call);
+        return call.reply;
+    }
+
+    /**
+     * Removes a pending call, e.g. because its message could not be sent.
+     * @param message The message of the call
+     */
+    void remove(MethodCallMessage message) {
+        this.calls.remove(message.getCallId());
+    }
+
+    /**
+     * Hands a reply to the call that is waiting for it.
+     * @param message The message that was received
+     * @return False when the message is not the reply to a pending call
+     */
+    boolean complete(MethodCallMessage message) {
+        Call call;
+        if (message.getCallId() != 0) {
+            if (!message.isReply()) return false;
+            call = this.calls.get(message.getCallId());
+            if (call == null || !call.isFrom(message.getOriginator())) return false;
+            if (!this.calls.remove(message.getCallId(), call)) return false;
+        } else if (REPLY_METHOD_NAME.equals(message.getMethodName())) {
+            call = removeOldest(message.getOriginator());
+        } else {
+            call = null;
+        }
+
+        if (call == null) return false;
+        call.reply.complete(message);
+        return true;
+    }
+
+    /**
+     * Fails every pending call, e.g. because the connection their replies would arrive on was closed.
+     * @param cause The reason why no reply will arrive
+     */
+    void failAll(IOException cause) {
+        Map.Entry<Long, Call> call;
+        while ((call = this.calls.pollFirstEntry()) != null) {
+            call.getValue().reply.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Blocks until the reply of a call has arrived.
+     * @param reply The future that was returned when the call was registered
+     * @return The reply
+     * @throws IOException Thrown when the reply will never arrive
+     */
+    static MethodCallMessage await(CompletableFuture<MethodCallMessage> reply) throws IOException {
+        try {
+            return reply.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a reply", e);
+        } catch (ExecutionException e) {
+            throw new IOException("No reply received", e.getCause());
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * @return The oldest pending call to the peer, removed from the table, or null when there is none
+     */
+    private Call removeOldest(NetworkAddress originator) {
+        for (Map.Entry<Long, Call> call : this.calls.entrySet()) {
+            if (call.getValue().isFrom(originator) && this.calls.remove(call.getKey(), call.getValue())) {
+                return call.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether an address is one of this host, without resolving names: replies carry IP-addresses,
+     * a name other than localhost is never local.
+     */
+    private static boolean isLocal(NetworkAddress address) {
+        if (address.isUnixDomain()) return true;
+
+        String ipAddress = address.getIpAddress();
+        if (ipAddress.equalsIgnoreCase("localhost")) return true;
+        if (!isLiteral(ipAddress)) return false;
+        try {
+            // a literal is parsed without a lookup
+            InetAddress host = InetAddress.getByName(ipAddress);
+            return host.isLoopbackAddress() || host.isAnyLocalAddress() || LocalAddresses.ALL.contains(host);
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLiteral(String ipAddress) {
+        if (ipAddress.indexOf(':') >= 0) return true;
+        for (int i = 0; i < ipAddress.length(); i++) {
+            char c = ipAddress.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) return false;
+        }
+        return !ipAddress.isEmpty();
+    }
+
+    /**
+     * The addresses of the network interfaces of this host, looked up once on first use.
+     */
+    private static final class LocalAddresses {
+        private static final Set<InetAddress> ALL = find();
+
+        private static Set<InetAddress> find() {
+            Set<InetAddress> addresses = new HashSet<>();
+            try {
+                for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                    addresses.addAll(Collections.list(networkInterface.getInetAddresses()));
+                }
+            } catch (SocketException e) {
+                System.err.println("Unable to list the network interfaces: " + e.getMessage());
+            }
+            try {
+                addresses.add(InetAddress.getLocalHost());
+            } catch (UnknownHostException ignored) {
+                // the host has no name that resolves, its interfaces were listed
+            }
+            return addresses;
+        }
+    }
+
+    /**
+     * A call that waits for its reply.
+     */
+    private static final class Call {
+        private final NetworkAddress peer;
+        private final CompletableFuture<MethodCallMessage> reply;
+
+        private Call(NetworkAddress peer) {
+            this.peer = peer;
+            this.reply = new CompletableFuture<>();
+        }
+
+        private boolean isFrom(NetworkAddress originator) {
+            if (this.peer == null) return true;
+            if (originator == null) return false;
+            if (!this.peer.isUnixDomain() && !originator.isUnixDomain()
+                    && this.peer.getIpAddress().equals(originator.getIpAddress())) {
+                return true;
+            }
+            return isLocal(this.peer) && isLocal(originator);
+        }
+    }
+}
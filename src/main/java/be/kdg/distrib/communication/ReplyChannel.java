@@ -0,0 +1,15 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+
+/**
+ * The way back to the sender of a received message, for replies that are not sent to the originator.
+ */
+interface ReplyChannel {
+    /**
+     * Writes the reply to a message that arrived through this channel.
+     * @param reply The reply that must be written
+     * @throws IOException Thrown when the reply can no longer be delivered
+     */
+    void write(MethodCallMessage reply) throws IOException;
+}
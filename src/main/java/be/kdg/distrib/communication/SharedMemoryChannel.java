@@ -0,0 +1,197 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Exchanges messages between a stub and a skeleton on the same host through a memory-mapped file.
+ * The file holds one ring buffer for requests and one for replies, so sending a message
+ * is a memory copy instead of a system call. Waiting sides spin before they park.
+ * <p>
+ * The skeleton creates the file, a single stub opens it: the rings have one producer and one consumer each.
+ * Stubs in one JVM share the channel of a file, and their calls are made one after another. A stub locks a
+ * region of the file header for as long as the JVM runs, so a stub in another process fails to open it.
+ */
+public final class SharedMemoryChannel {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x53484D31;
+    private static final int FILE_HEADER_SIZE = 128;
+    private static final int MAGIC_INDEX = 0;
+    private static final int CAPACITY_INDEX = 4;
+    private static final int STUB_LOCK_INDEX = 64;
+    private static final Map<Path, SharedMemoryChannel> OPENED = new HashMap<>();
+
+    private final SharedMemoryRing requests;
+    private final SharedMemoryRing replies;
+    private final FileChannel stubFile;
+    private final Object fileKey;
+
+    // -- CONSTRUCTOR ----------------------
+    private SharedMemoryChannel(MappedByteBuffer buffer, int capacity, FileChannel stubFile, Object fileKey) {
+        this.requests = new SharedMemoryRing(buffer, FILE_HEADER_SIZE, capacity);
+        this.replies = new SharedMemoryRing(buffer, FILE_HEADER_SIZE + SharedMemoryRing.HEADER_SIZE + capacity, capacity);
+        this.stubFile = stubFile;
+        this.fileKey = fileKey;
+    }
+
+    // -- FACTORIES ------------------------
+    /**
+     * Creates the file for a new channel, replacing any file that was left behind.
+     * @param file Path of the file
+     * @param capacity Size of each ring in bytes, must be a power of two
+     * @return The skeleton's side of the channel
+     * @throws IOException Thrown when the file could not be created
+     */
+    static SharedMemoryChannel create(Path file, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+
+        Files.deleteIfExists(file);
+        MappedByteBuffer buffer = map(file, FILE_HEADER_SIZE + 2 * (SharedMemoryRing.HEADER_SIZE + capacity));
+        SharedMemoryChannel channel = new SharedMemoryChannel(buffer, capacity, null, null);
+        channel.requests.reset();
+        channel.replies.reset();
+
+        // the magic number tells the stub that the rings are ready
+        buffer.putInt(CAPACITY_INDEX, capacity);
+        buffer.putInt(MAGIC_INDEX, MAGIC);
+        buffer.force();
+        return channel;
+    }
+
+    /**
+     * Opens the file of a channel that a skeleton created, or returns the channel a stub in this JVM opened on it.
+     * @param file Path of the file
+     * @return The stub's side of the channel
+     * @throws IOException Thrown when the file does not exist, does not hold a channel, or a stub in another process opened it
+     */
+    public static SharedMemoryChannel open(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        synchronized (OPENED) {
+            // a skeleton that created the file again made a new one, the channel of the old file is stale
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            SharedMemoryChannel opened = OPENED.get(path);
+            if (opened != null && Objects.equals(opened.fileKey, fileKey)) {
+                return opened;
+            }
+
+            SharedMemoryChannel channel = openExclusive(path, fileKey);
+            if (opened != null) {
+                opened.stubFile.close();
+            }
+            OPENED.put(path, channel);
+            return channel;
+        }
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Sends a request to the skeleton and waits for its reply.
+     * @param request The request that must be sent
+     * @return The reply to the request
+     * @throws IOException Thrown when the request is too large or a message is invalid
+     */
+    public synchronized MethodCallMessage call(MethodCallMessage request) throws IOException {
+        request.setReplyOnConnection(true);
+        this.requests.write(MessageReaderWriter.encode(request));
+        return decode(this.replies.read());
+    }
+
+    /**
+     * Sends a request to the skeleton without waiting for it to be handled.
+     * @param request The request that must be sent, no reply is sent to it
+     * @throws IOException Thrown when the request is too large
+     */
+    public synchronized void send(MethodCallMessage request) throws IOException {
+        request.setOneWay(true);
+        this.requests.write(MessageReaderWriter.encode(request));
+    }
+
+    /**
+     * Waits for the next request of the stub.
+     * Replies to the request are written back through this channel.
+     * @return The request
+     * @throws IOException Thrown when the request is invalid or the ring is corrupt, the channel can not be used any more
+     */
+    MethodCallMessage receive() throws IOException {
+        MethodCallMessage request = decode(this.requests.read());
+        request.setReplyChannel(this::writeReply);
+        return request;
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Maps the file through a channel that stays open, and locks the stub's region of its header with it.
+     * Other channels on the file are not opened afterwards: on some systems closing any of them releases the lock.
+     */
+    private static SharedMemoryChannel openExclusive(Path file, Object fileKey) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock(STUB_LOCK_INDEX, 1, false);
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException(file + " is already opened by another stub");
+            }
+
+            // mapping past the end would grow the file
+            long size = channel.size();
+            if (size < FILE_HEADER_SIZE) {
+                throw new IOException(file + " is not a shared memory channel");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+            if (header.getInt(MAGIC_INDEX) != MAGIC) {
+                throw new IOException(file + " is not a shared memory channel");
+            }
+
+            int capacity = header.getInt(CAPACITY_INDEX);
+            if (Integer.bitCount(capacity) != 1 || FILE_HEADER_SIZE + 2L * (SharedMemoryRing.HEADER_SIZE + capacity) > size) {
+                throw new IOException(file + " holds an invalid capacity");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE + 2 * (SharedMemoryRing.HEADER_SIZE + capacity));
+            return new SharedMemoryChannel(buffer, capacity, channel, fileKey);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private synchronized void writeReply(MethodCallMessage reply) throws IOException {
+        this.replies.write(MessageReaderWriter.encode(reply));
+    }
+
+    /**
+     * Maps a new file, only the skeleton creates it: a stub that opens a missing file fails instead of mapping an empty one.
+     */
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static MethodCallMessage decode(byte[] frame) throws IOException {
+        MethodCallMessage[] message = new MethodCallMessage[1];
+        TextMessageParser parser = new TextMessageParser();
+        parser.feed(ByteBuffer.wrap(frame), m -> message[0] = m);
+        parser.finish(m -> message[0] = m);
+        if (message[0] == null) {
+            throw new IOException("Frame does not contain a message");
+        }
+        return message[0];
+    }
+}
@@ -0,0 +1,116 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Single-producer/single-consumer ring buffer of frames in a memory-mapped file.
+ * Producer and consumer may live in different processes, they only exchange the
+ * positions at which they wrote and read, with release/acquire ordering.
+ * <p>
+ * Layout: the tail (written by the producer) and the head (written by the consumer)
+ * each on their own cache line, followed by the data. Every frame is a length followed
+ * by that many bytes, padded to a multiple of four so a length never wraps around.
+ */
+final class SharedMemoryRing {
+    static final int HEADER_SIZE = 256;
+    private static final int TAIL_OFFSET = 0;
+    private static final int HEAD_OFFSET = 128;
+    private static final VarHandle POSITIONS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+    private final int tailIndex;
+    private final int headIndex;
+    private final int dataIndex;
+    private final int capacity;
+    private final int mask;
+
+    // -- CONSTRUCTOR ----------------------
+    /**
+     * @param buffer The mapped file
+     * @param offset Position of the ring in the file
+     * @param capacity Size of the data region, must be a power of two
+     */
+    SharedMemoryRing(MappedByteBuffer buffer, int offset, int capacity) {
+        this.buffer = buffer;
+        this.tailIndex = offset + TAIL_OFFSET;
+        this.headIndex = offset + HEAD_OFFSET;
+        this.dataIndex = offset + HEADER_SIZE;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    // -- METHODS --------------------------
+    void reset() {
+        POSITIONS.setRelease(this.buffer, this.tailIndex, 0L);
+        POSITIONS.setRelease(this.buffer, this.headIndex, 0L);
+    }
+
+    /**
+     * Writes a frame, waiting while the consumer has not made enough room yet.
+     * Must only be called by the producer.
+     * @param frame The bytes of the frame
+     * @throws IOException Thrown when the frame can never fit in the ring
+     */
+    void write(byte[] frame) throws IOException {
+        int record = recordSize(frame.length);
+        if (record > this.capacity) {
+            throw new IOException("Message of " + frame.length + " bytes does not fit in the shared memory ring");
+        }
+
+        long tail = (long) POSITIONS.getOpaque(this.buffer, this.tailIndex);
+        for (int attempt = 0; tail + record - (long) POSITIONS.getAcquire(this.buffer, this.headIndex) > this.capacity; attempt++) {
+            Backoff.idle(attempt);
+        }
+
+        int index = (int) (tail & this.mask);
+        this.buffer.putInt(this.dataIndex + index, frame.length);
+        copy(frame, (index + Integer.BYTES) & this.mask, true);
+        POSITIONS.setRelease(this.buffer, this.tailIndex, tail + record);
+    }
+
+    /**
+     * Reads the next frame, waiting until the producer has written one.
+     * Must only be called by the consumer.
+     * @return The bytes of the frame
+     * @throws IOException Thrown when the ring holds a length that no frame can have
+     */
+    byte[] read() throws IOException {
+        long head = (long) POSITIONS.getOpaque(this.buffer, this.headIndex);
+        for (int attempt = 0; (long) POSITIONS.getAcquire(this.buffer, this.tailIndex) <= head; attempt++) {
+            Backoff.idle(attempt);
+        }
+
+        int index = (int) (head & this.mask);
+        int length = this.buffer.getInt(this.dataIndex + index);
+        if (length < 0 || recordSize(length) > this.capacity) {
+            throw new IOException("Shared memory ring holds a frame of " + length + " bytes");
+        }
+        byte[] frame = new byte[length];
+        copy(frame, (index + Integer.BYTES) & this.mask, false);
+        POSITIONS.setRelease(this.buffer, this.headIndex, head + recordSize(frame.length));
+        return frame;
+    }
+
+    // -- HELPER METHODS -------------------
+    private static int recordSize(int length) {
+        return (Integer.BYTES + length + 3) & ~3;
+    }
+
+    /**
+     * Copies a frame from or to the data region, splitting it where it wraps around the end.
+     */
+    private void copy(byte[] frame, int index, boolean toRing) {
+        int first = Math.min(frame.length, this.capacity - index);
+        if (toRing) {
+            this.buffer.put(this.dataIndex + index, frame, 0, first);
+            this.buffer.put(this.dataIndex, frame, first, frame.length - first);
+        } else {
+            this.buffer.get(this.dataIndex + index, frame, 0, first);
+            this.buffer.get(this.dataIndex, frame, first, frame.length - first);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package be.kdg.distrib.communication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the streamed values that follow a binary frame, in the order of their parameters.
+ * A stream of a known length up to {@link #MEMORY_LIMIT} is kept in memory, larger streams and
+ * streams that arrive in chunks are written to a temporary file as their bytes arrive.
+ * Each stream replaces its pending value in the message once it is complete.
+ * The temporary files belong to the message, they are deleted when it is released, see {@link MethodCallMessage#releaseStreams()}.
+ * A stream larger than {@link MessageCodecs#getMaxStreamSize()} is refused, so a peer can not fill the disk.
+ * <p>
+ * The files are written on the thread that feeds the bytes, which is the I/O thread of a server.
+ * Each write holds no more than the bytes of one read and goes to a local file, which the page cache
+ * absorbs without waiting for the disk, so it costs about as much as the copy into a buffer would.
+ *
+ * @see BinaryMessageCodec
+ */
+final class StreamReceiver {
+    static final int MEMORY_LIMIT = 64 * 1024;
+
+    private final MethodCallMessage message;
+    private final List<String> keys;
+    private final List<Long> lengths;
+    private final ByteBuffer chunkHeader;
+    private int index;
+    private long remaining;
+    private long received;
+    private boolean chunked;
+    private ByteBuffer memory;
+    private FileChannel file;
+    private Path path;
+
+    // -- CONSTRUCTOR ----------------------
+    /**
+     * @param message A message that was decoded with pending streams
+     * @throws IOException Thrown when a temporary file could not be created or a stream is too large,
+     *                     the streams of the message are discarded then
+     */
+    StreamReceiver(MethodCallMessage message) throws IOException {
+        this.message = message;
+        this.keys = new ArrayList<>();
+        this.lengths = new ArrayList<>();
+        this.chunkHeader = ByteBuffer.allocate(4);
+
+        Parameters parameters = message.getSortedParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            ParameterValue value = parameters.getValue(i);
+            if (value.isPendingStream()) {
+                this.keys.add(parameters.getKey(i));
+                this.lengths.add(value.getPendingLength());
+            }
+        }
+        try {
+            start();
+        } catch (IOException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    // -- METHODS --------------------------
+    boolean isComplete() {
+        return this.index == this.keys.size();
+    }
+
+    MethodCallMessage getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Consumes the bytes of the streams, up to the end of the last stream.
+     * @param buffer Buffer in read mode, bytes after the last stream are left in it
+     * @throws IOException Thrown when a stream could not be written, is too large or its chunks are invalid
+     */
+    void feed(ByteBuffer buffer) throws IOException {
+        while (!isComplete() && buffer.hasRemaining()) {
+            // a chunk starts with its length, a chunk without bytes ends the stream
+            if (this.chunked && this.remaining == 0) {
+                while (this.chunkHeader.hasRemaining() && buffer.hasRemaining()) {
+                    this.chunkHeader.put(buffer.get());
+                }
+                if (this.chunkHeader.hasRemaining()) return;
+
+                this.remaining = this.chunkHeader.getInt(0);
+                this.chunkHeader.clear();
+                if (this.remaining < 0) throw new IOException("Invalid chunk length " + this.remaining);
+                if (this.remaining == 0) {
+                    complete();
+                    continue;
+                }
+                this.received += this.remaining;
+                checkSize(this.received);
+                continue;
+            }
+
+            int count = (int) Math.min(this.remaining, buffer.remaining());
+            write(buffer.slice(buffer.position(), count));
+            buffer.position(buffer.position() + count);
+            this.remaining -= count;
+            if (!this.chunked && this.remaining == 0) complete();
+        }
+    }
+
+    /**
+     * Receives the rest of the streams from a blocking channel.
+     * Files of a known length are filled by the channel directly, everything else goes through the buffer.
+     * @param buffered Buffer in read mode with the bytes that were already read, it is reused for reading
+     * @param channel Blocking channel the streams arrive on
+     * @throws IOException Thrown when the channel ended or a stream could not be written
+     */
+    void transfer(ByteBuffer buffered, ReadableByteChannel channel) throws IOException {
+        feed(buffered);
+        while (!isComplete()) {
+            if (this.file != null && !this.chunked && !buffered.hasRemaining()) {
+                long transferred = this.file.transferFrom(channel, this.file.position(), this.remaining);
+                if (transferred > 0) {
+                    this.file.position(this.file.position() + transferred);
+                    this.remaining -= transferred;
+                    if (this.remaining == 0) complete();
+                    continue;
+                }
+                // nothing was transferred, reading tells whether the channel ended
+            }
+
+            buffered.compact();
+            int read = channel.read(buffered);
+            buffered.flip();
+            if (read < 0) throw new EOFException("Connection closed in the middle of a stream");
+            feed(buffered);
+        }
+    }
+
+    /**
+     * Discards the streams that were received so far, when their connection closed.
+     */
+    void discard() {
+        if (this.file != null) {
+            try {
+                this.file.close();
+            } catch (IOException ignored) {
+                // the file is deleted either way
+            }
+        }
+        this.message.releaseStreams();
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Prepares the sink of the next stream, streams without any bytes are complete right away.
+     */
+    private void start() throws IOException {
+        while (!isComplete()) {
+            long length = this.lengths.get(this.index);
+            this.chunked = length < 0;
+            this.remaining = this.chunked ? 0 : length;
+            this.received = 0;
+            if (!this.chunked) checkSize(length);
+
+            if (!this.chunked && length <= MEMORY_LIMIT) {
+                this.memory = ByteBuffer.allocate((int) length);
+            } else {
+                this.path = this.message.getTemporaryFiles().create("stream");
+                this.file = FileChannel.open(this.path, StandardOpenOption.WRITE);
+            }
+            if (this.chunked || length > 0) return;
+            finishStream();
+        }
+    }
+
+    private void checkSize(long length) throws IOException {
+        long max = MessageCodecs.getMaxStreamSize();
+        if (length > max)
+            throw new IOException("Stream of " + length + " bytes is larger than the maximum of " + max);
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        if (this.memory != null) {
+            this.memory.put(bytes);
+            return;
+        }
+        while (bytes.hasRemaining()) {
+            this.file.write(bytes);
+        }
+    }
+
+    private void complete() throws IOException {
+        finishStream();
+        start();
+    }
+
+    private void finishStream() throws IOException {
+        ParameterValue value;
+        if (this.memory != null) {
+            value = ParameterValue.received(this.memory.flip(), this.message.getTemporaryFiles());
+        } else {
+            this.file.close();
+            value = ParameterValue.received(this.path, this.message.getTemporaryFiles());
+        }
+        this.message.getSortedParameters().put(this.keys.get(this.index), value);
+
+        this.memory = null;
+        this.file = null;
+        this.path = null;
+        this.index++;
+    }
+}
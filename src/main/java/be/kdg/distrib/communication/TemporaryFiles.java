@@ -0,0 +1,74 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the temporary files that hold the streams of a received message, and deletes them together
+ * once the message was handled. Streams are received on an I/O thread and read by the handler,
+ * so files are created and deleted under the lock of their owner.
+ *
+ * @see MethodCallMessage#releaseStreams()
+ */
+final class TemporaryFiles {
+    private final List<Path> files;
+    private boolean released;
+    private boolean kept;
+
+    // -- CONSTRUCTOR ----------------------
+    TemporaryFiles() {
+        this.files = new ArrayList<>();
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Creates an empty temporary file that is deleted with the others.
+     * @param prefix Start of the name of the file
+     * @return The path of the file
+     * @throws IOException Thrown when the file could not be created, or the files were released already
+     */
+    synchronized Path create(String prefix) throws IOException {
+        if (this.released) {
+            throw new IOException("The streams of the message have been released");
+        }
+        Path file = Files.createTempFile(prefix, ".bin");
+        if (this.kept) {
+            file.toFile().deleteOnExit();
+        } else {
+            this.files.add(file);
+        }
+        return file;
+    }
+
+    /**
+     * Deletes every file, files that can not be deleted yet (e.g. while they are mapped on Windows) are deleted on exit.
+     * Does nothing once the files were kept.
+     */
+    synchronized void delete() {
+        if (this.kept) return;
+        this.released = true;
+        for (Path file : this.files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+        this.files.clear();
+    }
+
+    /**
+     * Gives up the files, they are left to whoever uses them and deleted on exit at the latest.
+     * Files that are created later are left to them as well.
+     */
+    synchronized void keep() {
+        this.kept = true;
+        for (Path file : this.files) {
+            file.toFile().deleteOnExit();
+        }
+        this.files.clear();
+    }
+}
@@ -0,0 +1,24 @@
+package be.kdg.distrib.communication;
+
+/**
+ * The text format of {@link MessageReaderWriter} in length-prefixed frames, see {@link TextFrameCodec}.
+ * Readable when debugging, while frames spare the receiver the search for the end of a message.
+ */
+public final class TextCodec implements MessageCodec {
+    public static final String NAME = "text";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getId() {
+        return 1;
+    }
+
+    @Override
+    public FrameCodec open(boolean compress) {
+        return new TextFrameCodec();
+    }
+}
@@ -0,0 +1,49 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Writes every message in the text format of {@link MessageReaderWriter}, inside a frame.
+ * Frames are parsed with a {@link TextMessageParser}, which accepts the same messages as the text connections do.
+ * Text can not carry streams.
+ */
+final class TextFrameCodec implements FrameCodec {
+    private final TextMessageParser parser;
+    private final MessageFramer.MessageReceiver receiver;
+    private MethodCallMessage decoded;
+
+    // -- CONSTRUCTOR ----------------------
+    TextFrameCodec() {
+        this.parser = new TextMessageParser();
+        this.receiver = message -> this.decoded = message;
+    }
+
+    // -- METHODS --------------------------
+    @Override
+    public void encode(MethodCallMessage message, Collection<ByteBuffer> out) {
+        byte[] text = MessageReaderWriter.encode(message);
+        out.add(ByteBuffer.allocate(4 + text.length).putInt(text.length).put(text).flip());
+    }
+
+    @Override
+    public MethodCallMessage decode(int header, ByteBuffer body) throws IOException {
+        if (BinaryMessageCodec.isCompressed(header)) {
+            throw new IOException("Compressed frame on a connection without compression");
+        }
+
+        this.parser.feed(body, this.receiver);
+        if (this.decoded == null) {
+            // the end of the frame ends its message, like the end of a stream does
+            this.parser.finish(this.receiver);
+        }
+
+        MethodCallMessage message = this.decoded;
+        this.decoded = null;
+        if (message == null) {
+            throw new IOException("Frame does not hold a message");
+        }
+        return message;
+    }
+}
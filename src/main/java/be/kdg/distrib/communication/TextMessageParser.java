@@ -0,0 +1,344 @@
+package be.kdg.distrib.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Parses text messages from bytes that arrive in chunks of any size.
+ * The parser never blocks: it consumes whatever bytes are available, remembers where it was
+ * in the middle of a token or message, and continues there when the next chunk arrives.
+ * <p>
+ * Tokens follow the rules of the {@link java.io.StreamTokenizer} that {@link MessageReaderWriter}
+ * reads with, so both accept the same messages. Words consist of letters, digits, dots and dashes,
+ * values may be quoted with escapes, and a slash starts a comment up to the end of the line.
+ * A message ends at the end-of-message token, or at the end of the stream.
+ */
+final class TextMessageParser {
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private Lexer lexer;
+    private Expect expect;
+    private Section section;
+    private byte quote;
+    private int octal;
+    private int octalDigits;
+    private byte[] token;
+    private int length;
+    private StringBuilder escaped;
+
+    // fields of the message that is being parsed
+    private long callId;
+    private boolean replyOnConnection;
+    private boolean oneWay;
+    private boolean reply;
+    private String name;
+    private String ipAddress;
+    private int port;
+    private MethodCallMessage message;
+
+    // -- CONSTRUCTOR ----------------------
+    TextMessageParser() {
+        this.lexer = Lexer.BETWEEN;
+        this.expect = Expect.HEADER;
+        this.token = new byte[64];
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Consumes the readable bytes of a buffer.
+     * @param buffer Buffer in read mode
+     * @param receiver Receives every message that has been completed by these bytes
+     * @throws IOException Thrown when the bytes are not a valid message
+     */
+    void feed(ByteBuffer buffer, MessageFramer.MessageReceiver receiver) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (consume(b, receiver)) {
+                buffer.position(buffer.position() + 1);
+            }
+        }
+    }
+
+    /**
+     * Completes the message that was still being parsed when the stream ended.
+     * @param receiver Receives the last message, if the stream did not end between two messages
+     * @throws IOException Thrown when the stream ended in the middle of a message
+     */
+    void finish(MessageFramer.MessageReceiver receiver) throws IOException {
+        switch (this.lexer) {
+            case WORD:
+            case QUOTED:
+            case ESCAPE:
+                completeToken();
+                break;
+            case OCTAL:
+                appendChar(this.octal);
+                completeToken();
+                break;
+            default:
+                break;
+        }
+        this.lexer = Lexer.BETWEEN;
+
+        if (this.expect == Expect.NAME && this.section == Section.PARAMETERS) {
+            completeMessage(receiver);
+        } else if (this.expect != Expect.HEADER) {
+            throw new IOException("stream ended in the middle of a message");
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    /**
+     * Feeds a single byte to the lexer.
+     * @return False when the byte ended a token but was not consumed, it must be fed again
+     */
+    private boolean consume(byte b, MessageFramer.MessageReceiver receiver) throws IOException {
+        switch (this.lexer) {
+            case BETWEEN:
+                if (isWhitespace(b)) {
+                    return true;
+                } else if (isWordStart(b)) {
+                    this.lexer = Lexer.WORD;
+                    append(b);
+                } else if (b == '"' || b == '\'') {
+                    this.lexer = Lexer.QUOTED;
+                    this.quote = b;
+                } else if (b == '/') {
+                    this.lexer = Lexer.COMMENT;
+                } else if (b == MessageReaderWriter.END_OF_MESSAGE) {
+                    endOfMessage(receiver);
+                } else {
+                    throw new IOException("word expected but '" + (char) (b & 0xFF) + "' found");
+                }
+                return true;
+
+            case WORD:
+                if (isWordStart(b) || isDigit(b) || b == '.' || b == '-') {
+                    append(b);
+                    return true;
+                }
+                this.lexer = Lexer.BETWEEN;
+                completeToken();
+                return false;
+
+            case QUOTED:
+                if (b == this.quote || b == '\n' || b == '\r') {
+                    // like the stream tokenizer, a value that is not closed ends at the end of the line
+                    this.lexer = Lexer.BETWEEN;
+                    completeToken();
+                } else if (b == '\\') {
+                    this.lexer = Lexer.ESCAPE;
+                } else {
+                    append(b);
+                }
+                return true;
+
+            case ESCAPE:
+                this.lexer = Lexer.QUOTED;
+                if (b >= '0' && b <= '7') {
+                    this.lexer = Lexer.OCTAL;
+                    this.octal = b - '0';
+                    this.octalDigits = 1;
+                } else {
+                    append(unescape(b));
+                }
+                return true;
+
+            case OCTAL:
+                // up to three digits, as long as the value fits in a byte
+                boolean digit = b >= '0' && b <= '7' && (this.octalDigits < 2 || this.octal < 040);
+                if (digit) {
+                    this.octal = this.octal * 8 + (b - '0');
+                    this.octalDigits++;
+                }
+                if (!digit || this.octalDigits == 3) {
+                    this.lexer = Lexer.QUOTED;
+                    appendChar(this.octal);
+                }
+                return digit;
+
+            case COMMENT:
+                if (b == '\n' || b == '\r') {
+                    this.lexer = Lexer.BETWEEN;
+                }
+                return true;
+
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void completeToken() throws IOException {
+        String value = new String(this.token, 0, this.length, CHARSET);
+        if (this.escaped != null) {
+            value = this.escaped.append(value).toString();
+            this.escaped = null;
+        }
+        this.length = 0;
+
+        switch (this.expect) {
+            case HEADER:
+                if (!"MethodCallMessage".equals(value)) {
+                    throw new IOException("stream does not contain a message");
+                }
+                startMessage();
+                break;
+            case NAME:
+                this.name = value;
+                this.expect = Expect.VALUE;
+                break;
+            case VALUE:
+                pair(this.name, value);
+                this.expect = Expect.NAME;
+                break;
+        }
+    }
+
+    private void startMessage() {
+        this.expect = Expect.NAME;
+        this.section = Section.ATTRIBUTES;
+        this.callId = 0;
+        this.replyOnConnection = false;
+        this.oneWay = false;
+        this.reply = false;
+        this.message = null;
+    }
+
+    /**
+     * Handles a name-value pair, in the order the sections of a message are written.
+     */
+    private void pair(String name, String value) throws IOException {
+        switch (this.section) {
+            case ATTRIBUTES:
+                if (name.startsWith(MessageReaderWriter.ATTRIBUTE_PREFIX)) {
+                    attribute(name, value);
+                    return;
+                }
+                if (!"originator.IP".equals(name)) {
+                    throw new IOException("stream does not contain the originator of the message");
+                }
+                this.ipAddress = value;
+                this.section = Section.PORT;
+                break;
+            case PORT:
+                if (!"originator.port".equals(name)) {
+                    throw new IOException("stream does not contain the originator of the message");
+                }
+                this.port = (int) parseNumber(value);
+                this.section = Section.METHOD;
+                break;
+            case METHOD:
+                if (!"methodName".equals(name)) {
+                    throw new IOException("stream does not contain the methodName of the message");
+                }
+                this.message = new MethodCallMessage(NetworkAddress.parse(this.ipAddress, this.port), value);
+                this.section = Section.PARAMETERS;
+                break;
+            case PARAMETERS:
+                this.message.setParameter(name, value);
+                break;
+        }
+    }
+
+    private void attribute(String name, String value) throws IOException {
+        if (MessageReaderWriter.CALL_ID_ATTRIBUTE.equals(name)) {
+            this.callId = parseNumber(value);
+        } else if (MessageReaderWriter.REPLY_ATTRIBUTE.equals(name)) {
+            this.replyOnConnection = MessageReaderWriter.REPLY_ON_CONNECTION.equals(value);
+            this.oneWay = MessageReaderWriter.REPLY_NONE.equals(value);
+        } else if (MessageReaderWriter.KIND_ATTRIBUTE.equals(name)) {
+            this.reply = MessageReaderWriter.KIND_REPLY.equals(value);
+        }
+    }
+
+    private void endOfMessage(MessageFramer.MessageReceiver receiver) throws IOException {
+        if (this.expect != Expect.NAME || this.section != Section.PARAMETERS) {
+            throw new IOException("word expected but '" + MessageReaderWriter.END_OF_MESSAGE + "' found");
+        }
+        completeMessage(receiver);
+    }
+
+    private void completeMessage(MessageFramer.MessageReceiver receiver) throws IOException {
+        MethodCallMessage message = this.message;
+        message.setCallId(this.callId);
+        message.setReplyOnConnection(this.replyOnConnection);
+        message.setOneWay(this.oneWay);
+        message.setReply(this.reply);
+
+        this.expect = Expect.HEADER;
+        this.message = null;
+        receiver.receive(message);
+    }
+
+    private void append(byte b) {
+        if (this.length == this.token.length) {
+            this.token = Arrays.copyOf(this.token, this.length * 2);
+        }
+        this.token[this.length++] = b;
+    }
+
+    /**
+     * Appends a character of an escape, characters outside of ASCII are not a byte of the encoding.
+     */
+    private void appendChar(int c) {
+        if (c < 0x80) {
+            append((byte) c);
+            return;
+        }
+        if (this.escaped == null) {
+            this.escaped = new StringBuilder();
+        }
+        this.escaped.append(new String(this.token, 0, this.length, CHARSET)).append((char) c);
+        this.length = 0;
+    }
+
+    private static byte unescape(byte b) {
+        switch (b) {
+            case 'a': return 0x07;
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'v': return 0x0B;
+            default: return b;
+        }
+    }
+
+    private static long parseNumber(String value) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("number expected but '" + value + "' found");
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static boolean isWordStart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b < 0;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private enum Lexer {
+        BETWEEN, COMMENT, WORD, QUOTED, ESCAPE, OCTAL
+    }
+
+    private enum Expect {
+        HEADER, NAME, VALUE
+    }
+
+    /**
+     * The sections of a message, in the order they are written.
+     */
+    private enum Section {
+        ATTRIBUTES, PORT, METHOD, PARAMETERS
+    }
+}
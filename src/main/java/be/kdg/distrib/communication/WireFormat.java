@@ -0,0 +1,24 @@
+package be.kdg.distrib.communication;
+
+/**
+ * The encoding of the messages that are sent over a connection.
+ */
+public enum WireFormat {
+    /**
+     * Messages are written as text lines, readable by every peer.
+     */
+    TEXT,
+
+    /**
+     * Messages are written as length-prefixed frames, when the peer agrees to it
+     * while the connection is opened. Otherwise the connection falls back to text.
+     * The frames are binary unless the connection offers another {@link MessageCodec}.
+     */
+    BINARY,
+
+    /**
+     * Binary frames, of which the large ones are compressed when the peer agrees to it.
+     * Worth it on links where bandwidth rather than CPU is scarce.
+     */
+    COMPRESSED
+}
@@ -0,0 +1,42 @@
+package be.kdg.distrib.skeletonFactory;
+
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the skeletons that run in this JVM, by address.
+ * Stubs that point at one of these addresses can skip the network altogether.
+ */
+public final class LocalSkeletons {
+    private static final Map<NetworkAddress, SkeletonHandler> SKELETONS = new ConcurrentHashMap<>();
+
+    private LocalSkeletons() {
+    }
+
+    private static final String[] LOOPBACK_ADDRESSES = {"127.0.0.1", "localhost"};
+
+    static void register(SkeletonHandler skeleton) {
+        NetworkAddress address = skeleton.getAddress();
+        // a skeleton without a socket, e.g. one that only listens on shared memory, can not be pointed at
+        if (!address.isUnixDomain() && address.getPortNumber() == 0) return;
+        SKELETONS.put(address, skeleton);
+
+        // stubs in the same JVM usually point at the loopback address
+        if (!address.isUnixDomain()) {
+            for (String loopback : LOOPBACK_ADDRESSES) {
+                SKELETONS.put(new NetworkAddress(loopback, address.getPortNumber()), skeleton);
+            }
+        }
+    }
+
+    /**
+     * Finds the running skeleton with the given address.
+     * @param address The address the skeleton listens on
+     * @return The skeleton, or null when it does not run in this JVM
+     */
+    public static SkeletonHandler lookup(NetworkAddress address) {
+        return SKELETONS.get(address);
+    }
+}
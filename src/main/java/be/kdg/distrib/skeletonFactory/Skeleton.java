@@ -2,11 +2,20 @@ package be.kdg.distrib.skeletonFactory;
 
 import be.kdg.distrib.communication.MethodCallMessage;
 import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.transport.Transports;
 
 import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
 
 public interface Skeleton {
     void run();
     NetworkAddress getAddress();
     void handleRequest(MethodCallMessage message);
+
+    /**
+     * @return The URI stubs can pass to {@code StubFactory.createStub(Class, URI)}
+     */
+    default URI getUri() {
+        return Transports.toUri(getAddress());
+    }
 }
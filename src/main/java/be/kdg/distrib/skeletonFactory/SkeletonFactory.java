@@ -1,7 +1,53 @@
 package be.kdg.distrib.skeletonFactory;
 
+import be.kdg.distrib.transport.SharedMemoryTransport;
+
+import java.net.URI;
+import java.nio.file.Path;
+
 public class SkeletonFactory {
     public static Skeleton createSkeleton(Object implementation) {
         return new SkeletonHandler(implementation);
     }
+
+    /**
+     * Creates a skeleton that accepts and handles requests on several threads.
+     * Every listener binds its own server socket to the same port where the platform supports it.
+     * @param implementation The object that handles the requests
+     * @param listeners Amount of listener threads
+     */
+    public static Skeleton createSkeleton(Object implementation, int listeners) {
+        return new SkeletonHandler(implementation, listeners);
+    }
+
+    /**
+     * Creates a skeleton that listens on a Unix domain socket, for stubs on the same host.
+     * @param implementation The object that handles the requests
+     * @param socketPath Path of the socket file
+     */
+    public static Skeleton createSkeleton(Object implementation, Path socketPath) {
+        return new SkeletonHandler(implementation, socketPath);
+    }
+
+    /**
+     * Creates a skeleton that also receives requests through a memory-mapped file,
+     * for a single stub on the same host.
+     * @param implementation The object that handles the requests
+     * @param file Path of the file that backs the channel
+     */
+    public static Skeleton createSharedMemorySkeleton(Object implementation, Path file) {
+        SkeletonHandler skeleton = new SkeletonHandler(implementation);
+        skeleton.bind(SharedMemoryTransport.toUri(file));
+        return skeleton;
+    }
+
+    /**
+     * Creates a skeleton that listens with the transport that handles the scheme of the address,
+     * such as {@code tcp://0.0.0.0:0}, {@code unix:/path}, {@code inproc://name} or {@code shm:/path}.
+     * @param implementation The object that handles the requests
+     * @param address URI to listen on, {@link Skeleton#getUri()} tells stubs where to connect
+     */
+    public static Skeleton createSkeleton(Object implementation, URI address) {
+        return new SkeletonHandler(implementation, address);
+    }
 }
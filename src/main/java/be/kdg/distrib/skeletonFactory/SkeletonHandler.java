@@ -1,15 +1,22 @@
 package be.kdg.distrib.skeletonFactory;
 
+import be.kdg.distrib.communication.ConnectionPool;
 import be.kdg.distrib.communication.MessageManager;
 import be.kdg.distrib.communication.MethodCallMessage;
 import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.communication.Parameters;
 import be.kdg.distrib.exception.ParseException;
 import be.kdg.distrib.logger.Logger;
+import be.kdg.distrib.transport.Transports;
+import be.kdg.distrib.transport.UnixTransport;
 import be.kdg.distrib.util.InvocationFormatter;
 import be.kdg.distrib.util.ObjectParser;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -17,24 +24,67 @@ public class SkeletonHandler implements Skeleton {
     private final static Logger LOGGER = Logger.getLogger("SkeletonHandler");
     private final MessageManager messageManager;
     private final NetworkAddress networkAddress;
+    private final URI uri;
     private final Object implementation;
     private final Map<String, Method> methodMap;
+    private final int listeners;
 
-    // -- CONSTRUCTOR ----------------------
+    // -- CONSTRUCTORS ---------------------
     public SkeletonHandler(Object implementation) {
+        this(implementation, 1);
+    }
+
+    public SkeletonHandler(Object implementation, int listeners) {
+        this(implementation, new MessageManager(new ConnectionPool(), listeners, listeners > 1), listeners);
+    }
+
+    /**
+     * Creates a skeleton that listens on a Unix domain socket, for stubs on the same host.
+     * @param implementation The object that handles the requests
+     * @param socketPath Path of the socket file
+     */
+    public SkeletonHandler(Object implementation, Path socketPath) {
+        this(implementation, UnixTransport.toUri(socketPath));
+    }
+
+    /**
+     * Creates a skeleton that listens with the transport of the address.
+     * Its message manager opens no socket of its own, only the transport opens what it needs.
+     * @param implementation The object that handles the requests
+     * @param address URI to listen on, for example {@code tcp://0.0.0.0:0} or {@code inproc://name}
+     */
+    public SkeletonHandler(Object implementation, URI address) {
+        this(implementation, new MessageManager(new ConnectionPool(), MessageManager.DEFAULT_IO_THREADS, false, null), address, 1);
+    }
+
+    private SkeletonHandler(Object implementation, MessageManager messageManager, int listeners) {
+        this(implementation, messageManager, Transports.toUri(messageManager.getMyAddress()), listeners);
+    }
+
+    private SkeletonHandler(Object implementation, MessageManager messageManager, URI address, int listeners) {
+        if (listeners < 1)
+            throw new IllegalArgumentException("A skeleton needs at least one listener");
+
         this.implementation = implementation;
-        this.messageManager = new MessageManager();
-        this.networkAddress = this.messageManager.getMyAddress();
+        this.listeners = listeners;
+        this.messageManager = messageManager;
+        this.uri = bind(messageManager, address);
+        this.networkAddress = toNetworkAddress(this.uri, messageManager);
         this.methodMap = this.createMethodMap();
     }
 
     @Override
     public void run() {
-        // create new thread that runs listen method
-        Thread thread = new Thread(this::listen);
+        // allow stubs in the same JVM to skip the network
+        LocalSkeletons.register(this);
+
+        for (int i = 0; i < this.listeners; i++) {
+            // create new thread that runs listen method
+            Thread thread = new Thread(this::listen);
 
-        // start new thread
-        thread.start();
+            // start new thread
+            thread.start();
+        }
     }
 
 
@@ -43,6 +93,11 @@ public class SkeletonHandler implements Skeleton {
         return this.networkAddress;
     }
 
+    @Override
+    public URI getUri() {
+        return this.uri;
+    }
+
     @Override
     public void handleRequest(MethodCallMessage message) {
         LOGGER.info("Handling method call '%s' for implementation '%s'",
@@ -58,7 +113,7 @@ public class SkeletonHandler implements Skeleton {
             }
 
             // parse map to arguments and invoke with arguments
-            Object[] args = InvocationFormatter.formatCallParameters(method.getParameters(), message.getParameters());
+            Object[] args = InvocationFormatter.formatCallParameters(method, message.getSortedParameters());
 
             // invoke method and get return value
             Object returnVal = method.invoke(this.implementation, args);
@@ -66,9 +121,8 @@ public class SkeletonHandler implements Skeleton {
             // create response as a method call message
             MethodCallMessage response = constructResponse(method, returnVal);
 
-            // send response to originator (sync communication)
-            this.messageManager.send(response, message.getOriginator());
-
+            // send response on the request connection or to the originator (sync communication)
+            this.messageManager.reply(message, response);
 
 
         } catch (IllegalAccessException | InvocationTargetException | ParseException e) {
@@ -76,12 +130,69 @@ public class SkeletonHandler implements Skeleton {
                     message.getMethodName(), this.implementation.getClass().getSimpleName());
             LOGGER.error(e.getMessage());
             throw new RuntimeException(e.getMessage());
+        } finally {
+            // the reply was written, files the arguments were streamed into are no longer needed
+            message.releaseStreams();
         }
 
     }
 
 
+    /**
+     * Also receives requests that are sent to another address, with the transport of that address.
+     * @param address URI to listen on
+     * @return The URI stubs can connect to
+     */
+    public URI bind(URI address) {
+        return bind(this.messageManager, address);
+    }
+
+    /**
+     * Handles a request from a stub in the same JVM.
+     * The request is queued and handled like a remote request, but never goes through a socket.
+     * @param message The request
+     * @return The response to the request
+     */
+    public MethodCallMessage handleLocalRequest(MethodCallMessage message) {
+        return this.messageManager.deliver(message);
+    }
+
+    /**
+     * Calls the implementation directly on the current thread, without any message in between.
+     * Arguments and return value are passed by reference.
+     * @param methodName Name of the invoked method
+     * @param args Arguments of the invoked method
+     * @return The return value of the implementation
+     * @throws Throwable Whatever the implementation throws
+     */
+    public Object invokeDirect(String methodName, Object[] args) throws Throwable {
+        Method method = this.methodMap.get(methodName);
+        if (method == null) {
+            throw new NullPointerException("No method with name " + methodName + " exists for the current implementation");
+        }
+
+        try {
+            return method.invoke(this.implementation, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
     // -- HELPER METHODS -------------------
+    private static URI bind(MessageManager messageManager, URI address) {
+        try {
+            return Transports.bind(address, messageManager);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to listen on " + address, e);
+        }
+    }
+
+    private static NetworkAddress toNetworkAddress(URI uri, MessageManager messageManager) {
+        // stubs that are created with an IP and port need the socket the skeleton listens on
+        NetworkAddress address = Transports.toNetworkAddress(uri);
+        return address != null ? address : messageManager.getMyAddress();
+    }
+
     private void listen() {
         // TODO: (optional) allow for graceful shutdown of thread
 
@@ -100,27 +211,30 @@ public class SkeletonHandler implements Skeleton {
             // wait for request - synchronous
             MethodCallMessage request = this.messageManager.wReceive();
 
-            // handle request
-            this.handleRequest(request);
+            // handle request, a failing request must not stop the listener
+            try {
+                this.handleRequest(request);
+            } catch (RuntimeException e) {
+                LOGGER.error("Request '%s' failed: %s", request.getMethodName(), e.getMessage());
+            }
         }
 
     }
 
     private MethodCallMessage constructResponse(Method method, Object returnValue) throws IllegalAccessException {
-        MethodCallMessage response = new MethodCallMessage(this.networkAddress, "result");
-
         // differentiate response if void
         if (method.getReturnType().equals(Void.TYPE)) {
+            MethodCallMessage response = new MethodCallMessage(this.networkAddress, "result");
             response.setParameter("result", "Ok");
             return response;
         }
 
         // construct response based on returnValue
-        Map<String, String> returnParams = InvocationFormatter.encodeObjectAsPairs("result", returnValue);
-        returnParams.forEach(response::setParameter);
+        Parameters.Builder parameters = Parameters.builder();
+        InvocationFormatter.encodeObject(parameters, "result", returnValue);
 
         // return response
-        return response;
+        return new MethodCallMessage(this.networkAddress, "result", parameters.build());
     }
 
     private Map<String, Method> createMethodMap() {
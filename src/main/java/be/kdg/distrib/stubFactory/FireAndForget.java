@@ -0,0 +1,17 @@
+package be.kdg.distrib.stubFactory;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a void method of a remote interface whose calls may get lost.
+ * A stub sends such calls as UDP datagrams and returns without waiting for the skeleton,
+ * calls that do not fit in a datagram are sent over TCP, still without waiting.
+ * The annotation is ignored on methods that return a value.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FireAndForget {
+}
@@ -0,0 +1,23 @@
+package be.kdg.distrib.stubFactory;
+
+/**
+ * Determines how a stub calls a skeleton that runs in the same JVM.
+ */
+public enum LocalMode {
+    /**
+     * Always go over the network, as if the skeleton ran elsewhere.
+     */
+    REMOTE,
+
+    /**
+     * Hand the method call message to the skeleton's queue, without encoding it or using a socket.
+     * Arguments and return values are still copied, like in a remote call.
+     */
+    MESSAGE,
+
+    /**
+     * Call the implementation directly on the calling thread.
+     * Arguments and return values are passed by reference.
+     */
+    DIRECT
+}
@@ -0,0 +1,17 @@
+package be.kdg.distrib.stubFactory;
+
+/**
+ * Determines how a stub receives the reply to a remote method call.
+ */
+public enum ReplyMode {
+    /**
+     * The skeleton opens a connection back to the originator of the call.
+     */
+    ORIGINATOR,
+
+    /**
+     * The skeleton writes the reply on the connection the call arrived on.
+     * The caller does not need to be reachable by the skeleton.
+     */
+    CONNECTION
+}
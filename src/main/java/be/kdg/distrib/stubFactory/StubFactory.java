@@ -1,19 +1,71 @@
 package be.kdg.distrib.stubFactory;
 
-import be.kdg.distrib.communication.MessageManager;
 import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.transport.SharedMemoryTransport;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Path;
 
 public class StubFactory {
     public static Object createStub(Class<?> stub, String address, int port) {
+        return createStub(stub, address, port, ReplyMode.ORIGINATOR);
+    }
+
+    public static Object createStub(Class<?> stub, String address, int port, ReplyMode replyMode) {
+        return createStub(stub, address, port, replyMode, LocalMode.MESSAGE);
+    }
+
+    /**
+     * Creates a stub that calls a skeleton in the same JVM as chosen by the local mode,
+     * and any other skeleton as chosen by the reply mode.
+     */
+    public static Object createStub(Class<?> stub, String address, int port, ReplyMode replyMode, LocalMode localMode) {
 
         // setup network address for receiving party
         NetworkAddress receiver = new NetworkAddress(address, port);
 
+        return createStub(stub, receiver, replyMode, localMode);
+    }
+
+    /**
+     * Creates a stub for a skeleton on the same host that listens on a Unix domain socket.
+     * Replies are received on the same socket.
+     * @param stub The interface the stub implements
+     * @param socketPath Path of the socket file of the skeleton
+     */
+    public static Object createStub(Class<?> stub, Path socketPath) {
+        return createStub(stub, new NetworkAddress(socketPath), ReplyMode.CONNECTION, LocalMode.MESSAGE);
+    }
+
+    /**
+     * Creates a stub for a skeleton on the same host that receives requests through a memory-mapped file.
+     * Only one stub can use the file at a time.
+     * @param stub The interface the stub implements
+     * @param file Path of the file that the skeleton created
+     */
+    public static Object createSharedMemoryStub(Class<?> stub, Path file) {
+        return createStub(stub, SharedMemoryTransport.toUri(file));
+    }
+
+    /**
+     * Creates a stub that sends its calls with the transport that handles the scheme of the address,
+     * such as {@code tcp://host:port}, {@code unix:/path}, {@code inproc://name} or {@code shm:/path}.
+     * @param stub The interface the stub implements
+     * @param address URI of the skeleton
+     */
+    public static Object createStub(Class<?> stub, URI address) {
+        return createStub(stub, new StubInvocationHandler(address));
+    }
+
+    private static Object createStub(Class<?> stub, NetworkAddress receiver, ReplyMode replyMode, LocalMode localMode) {
+
         // create stub invocation handler
-        InvocationHandler handler = new StubInvocationHandler(receiver);
+        return createStub(stub, new StubInvocationHandler(receiver, replyMode, localMode));
+    }
+
+    private static Object createStub(Class<?> stub, InvocationHandler handler) {
 
         // create and return stub
         return Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), new Class[] {stub}, handler);
@@ -1,33 +1,76 @@
 package be.kdg.distrib.stubFactory;
 
+import be.kdg.distrib.communication.ConnectionPool;
 import be.kdg.distrib.communication.MessageManager;
 import be.kdg.distrib.communication.MethodCallMessage;
 import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.communication.ParameterTree;
 import be.kdg.distrib.logger.Logger;
+import be.kdg.distrib.skeletonFactory.LocalSkeletons;
+import be.kdg.distrib.skeletonFactory.SkeletonHandler;
+import be.kdg.distrib.transport.TransportChannel;
+import be.kdg.distrib.transport.Transports;
 import be.kdg.distrib.util.InvocationFormatter;
 import be.kdg.distrib.util.ObjectParser;
+import be.kdg.distrib.util.ParameterViews;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URI;
 
 import static be.kdg.distrib.util.PrimitiveUtils.*;
 
 public class StubInvocationHandler implements InvocationHandler {
     private final static Logger LOGGER = Logger.getLogger("InvocationHandler");
     private final NetworkAddress receiver;
+    private final LocalMode localMode;
     private final MessageManager messageManager;
+    private final TransportChannel channel;
 
-    // -- CONSTRUCTOR ----------------------
+    // -- CONSTRUCTORS ---------------------
     public StubInvocationHandler(NetworkAddress receiver) {
+        this(receiver, ReplyMode.ORIGINATOR);
+    }
+
+    public StubInvocationHandler(NetworkAddress receiver, ReplyMode replyMode) {
+        this(receiver, replyMode, LocalMode.MESSAGE);
+    }
+
+    public StubInvocationHandler(NetworkAddress receiver, ReplyMode replyMode, LocalMode localMode) {
+        this(toUri(receiver, replyMode), receiver, localMode);
+    }
+
+    /**
+     * Creates a handler that sends its calls with the transport of the address.
+     * @param address URI of the skeleton, for example {@code tcp://host:port}
+     */
+    public StubInvocationHandler(URI address) {
+        this(address, null, LocalMode.REMOTE);
+    }
+
+    private StubInvocationHandler(URI address, NetworkAddress receiver, LocalMode localMode) {
         this.receiver = receiver;
-        this.messageManager = new MessageManager();
+        this.localMode = localMode;
+        // the transport opens a socket only when replies are sent to the stub's own address
+        this.messageManager = new MessageManager(new ConnectionPool(), MessageManager.DEFAULT_IO_THREADS, false, null);
+        try {
+            this.channel = Transports.connect(address, this.messageManager);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to connect to " + address, e);
+        }
     }
 
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
 
+        // skeleton in the same JVM can be called without encoding anything
+        SkeletonHandler localSkeleton = this.localMode == LocalMode.DIRECT ? LocalSkeletons.lookup(this.receiver) : null;
+        if (localSkeleton != null) {
+            return localSkeleton.invokeDirect(method.getName(), args);
+        }
+
         // parse invoked method as method call message
         MethodCallMessage invokedMessage = InvocationFormatter.parseInvokeCall(method, args, this.messageManager.getMyAddress());
 
@@ -35,15 +78,64 @@ public class StubInvocationHandler implements InvocationHandler {
         LOGGER.info("Method '%s' has been invoked with expected return type '%s'", invokedMessage.getMethodName(), method.getReturnType().getSimpleName());
         invokedMessage.getParameters().forEach((key, value) -> LOGGER.info("PARAM: %s = %s", key, value));
 
-        // send method call message to receiver (stub)
-        this.messageManager.send(invokedMessage, this.receiver);
+        // notifications that may get lost are sent without waiting for the skeleton
+        if (this.isFireAndForget(method)) {
+            this.channel.send(invokedMessage);
+            return null;
+        }
+
+        // send method call message to receiver (skeleton) and receive its response
+        MethodCallMessage response = this.call(invokedMessage);
+
+        // the result is the node below the root of the parameters
+        ParameterTree result = ParameterTree.of(response.getSortedParameters()).child("result");
+
+        // streams that end up in the return value are the caller's, files of other streams are deleted now
+        if (mayHoldStreams(method.getReturnType())) {
+            response.keepStreams();
+        }
+        try {
+            // interfaces are returned as a view that decodes the fields that are read
+            if (method.getReturnType().isInterface() && !isSimpleType(method.getReturnType())) {
+                if (result == null) {
+                    throw new IllegalArgumentException("Expected arguments to be passed when not expecting a void");
+                }
+                return ParameterViews.create(method.getReturnType(), result, "result");
+            }
+
+            // parse method call message to return object
+            return ObjectParser.parse(method.getReturnType(), result);
+        } finally {
+            response.releaseStreams();
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    private static URI toUri(NetworkAddress receiver, ReplyMode replyMode) {
+        URI address = Transports.toUri(receiver);
+        return replyMode == ReplyMode.ORIGINATOR ? URI.create(address + "?reply=originator") : address;
+    }
+
+    /**
+     * @return Whether a value of the type can be or contain a stream, objects and views may have stream fields
+     */
+    private static boolean mayHoldStreams(Class<?> type) {
+        return isStreamType(type) || !isSimpleType(type);
+    }
+
+    private boolean isFireAndForget(Method method) {
+        return method.getReturnType().equals(Void.TYPE) && method.isAnnotationPresent(FireAndForget.class);
+    }
 
-        // receive remote method call message from remote receiver (stub)
-        MethodCallMessage response = this.messageManager.wReceive();
+    private MethodCallMessage call(MethodCallMessage message) throws IOException {
+        // skeleton in the same JVM receives the message without a socket
+        SkeletonHandler localSkeleton = this.localMode == LocalMode.MESSAGE ? LocalSkeletons.lookup(this.receiver) : null;
+        if (localSkeleton != null) {
+            return localSkeleton.handleLocalRequest(message);
+        }
 
-        // parse method call message to return object
-        Map<String, String> params = ObjectParser.getKeysStartingWith("result", response.getParameters());
-        return ObjectParser.parse(method.getReturnType(), params);
+        // response comes back as the transport of the address decides
+        return this.channel.call(message);
     }
 
 
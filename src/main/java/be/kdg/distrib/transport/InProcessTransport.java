@@ -0,0 +1,65 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.MethodCallMessage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands messages to a skeleton in the same JVM, addressed by name as {@code inproc://name}.
+ * Messages are queued like any other message, but never encoded or sent over a socket.
+ */
+public final class InProcessTransport implements Transport {
+    public static final String SCHEME = "inproc";
+
+    private static final Map<String, MessageManager> BOUND = new ConcurrentHashMap<>();
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public TransportChannel connect(URI address, MessageManager messageManager) throws IOException {
+        MessageManager skeleton = BOUND.get(toName(address));
+        if (skeleton == null) {
+            throw new IOException("Nothing is bound to " + address);
+        }
+
+        return new TransportChannel() {
+            @Override
+            public MethodCallMessage call(MethodCallMessage request) throws IOException {
+                MethodCallMessage reply = skeleton.deliver(request);
+                if (reply == null) {
+                    throw new IOException("Call to " + address + " failed");
+                }
+                return reply;
+            }
+
+            @Override
+            public void send(MethodCallMessage request) {
+                request.setOneWay(true);
+                skeleton.deliver(request);
+            }
+        };
+    }
+
+    @Override
+    public URI bind(URI address, MessageManager messageManager) throws IOException {
+        if (BOUND.putIfAbsent(toName(address), messageManager) != null) {
+            throw new IOException(address + " is already bound");
+        }
+        return address;
+    }
+
+    private static String toName(URI address) {
+        String name = address.getAuthority();
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Expected inproc://name but got " + address);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,58 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.MethodCallMessage;
+import be.kdg.distrib.communication.SharedMemoryChannel;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Sends messages through a memory-mapped file, addressed as {@code shm:/path/of/the/file}.
+ * Only a single process can connect stubs to each file, stubs of one JVM share its channel.
+ *
+ * @see SharedMemoryChannel
+ */
+public final class SharedMemoryTransport implements Transport {
+    public static final String SCHEME = "shm";
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public TransportChannel connect(URI address, MessageManager messageManager) throws IOException {
+        SharedMemoryChannel channel = SharedMemoryChannel.open(UnixTransport.toPath(address));
+        return new TransportChannel() {
+            @Override
+            public MethodCallMessage call(MethodCallMessage request) throws IOException {
+                return channel.call(request);
+            }
+
+            @Override
+            public void send(MethodCallMessage request) throws IOException {
+                channel.send(request);
+            }
+        };
+    }
+
+    @Override
+    public URI bind(URI address, MessageManager messageManager) throws IOException {
+        Path file = UnixTransport.toPath(address);
+        if (!messageManager.listenSharedMemory(file)) {
+            throw new IOException("Unable to bind " + address);
+        }
+        return toUri(file);
+    }
+
+    /**
+     * Converts the path of a file to its URI.
+     * @param file Path of the file that backs the channel
+     * @return A {@code shm:} URI
+     */
+    public static URI toUri(Path file) {
+        return UnixTransport.pathUri(SCHEME, file);
+    }
+}
@@ -0,0 +1,52 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.MethodCallMessage;
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Base for the transports that send messages over sockets with a {@link MessageManager}.
+ * By default replies are written on the connection of the request. With the query
+ * {@code ?reply=originator} the skeleton sends them to the stub's own address instead,
+ * only then the stub's message manager opens a socket of its own.
+ */
+abstract class SocketTransport implements Transport {
+    private static final String REPLY_TO_ORIGINATOR = "reply=originator";
+
+    @Override
+    public TransportChannel connect(URI address, MessageManager messageManager) throws IOException {
+        NetworkAddress receiver = toNetworkAddress(address);
+        boolean replyToOriginator = REPLY_TO_ORIGINATOR.equals(address.getQuery());
+        if (replyToOriginator) {
+            messageManager.listenOnOwnAddress();
+        }
+
+        return new TransportChannel() {
+            @Override
+            public MethodCallMessage call(MethodCallMessage request) throws IOException {
+                MethodCallMessage reply = replyToOriginator
+                        ? messageManager.request(request, receiver)
+                        : messageManager.call(request, receiver);
+                if (reply == null) {
+                    throw new IOException("Call to " + address + " failed");
+                }
+                return reply;
+            }
+
+            @Override
+            public void send(MethodCallMessage request) {
+                messageManager.sendDatagram(request, receiver);
+            }
+        };
+    }
+
+    /**
+     * Converts the URI of a skeleton to the address its socket listens on.
+     * @param address URI of the skeleton
+     * @return The socket address
+     */
+    abstract NetworkAddress toNetworkAddress(URI address);
+}
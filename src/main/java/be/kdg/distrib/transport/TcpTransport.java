@@ -0,0 +1,59 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+/**
+ * Sends messages over TCP connections, addressed as {@code tcp://host:port}.
+ * Binding the port the message manager already listens on, or port 0 on the wildcard host, uses the
+ * manager's own socket. Any other address gets a socket of its own, bound to the host of the URI.
+ * A bound message manager also receives the datagrams of {@link be.kdg.distrib.stubFactory.FireAndForget} calls.
+ */
+public final class TcpTransport extends SocketTransport {
+    public static final String SCHEME = "tcp";
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public URI bind(URI address, MessageManager messageManager) throws IOException {
+        InetSocketAddress requested = toSocketAddress(address);
+        NetworkAddress bound = messageManager.getMyAddress();
+        // the manager's own socket already listens on its port on every interface
+        boolean onOwnSocket = bound.getPortNumber() > 0 && (requested.getPort() == bound.getPortNumber()
+                || requested.getPort() == 0 && requested.getAddress().isAnyLocalAddress());
+        if (!onOwnSocket) {
+            bound = messageManager.listen(requested);
+            if (bound == null) {
+                throw new IOException("Unable to bind " + address);
+            }
+        }
+        messageManager.listenDatagrams();
+        return Transports.toUri(bound);
+    }
+
+    private static InetSocketAddress toSocketAddress(URI address) throws IOException {
+        if (address.getHost() == null) {
+            throw new IllegalArgumentException("Expected tcp://host:port but got " + address);
+        }
+        InetSocketAddress socketAddress = new InetSocketAddress(address.getHost(), Math.max(address.getPort(), 0));
+        if (socketAddress.isUnresolved()) {
+            throw new IOException("Unknown host in " + address);
+        }
+        return socketAddress;
+    }
+
+    @Override
+    NetworkAddress toNetworkAddress(URI address) {
+        if (address.getHost() == null || address.getPort() < 0) {
+            throw new IllegalArgumentException("Expected tcp://host:port but got " + address);
+        }
+        return new NetworkAddress(address.getHost(), address.getPort());
+    }
+}
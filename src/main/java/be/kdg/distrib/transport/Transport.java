@@ -0,0 +1,39 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Carries method call messages between stubs and skeletons for one URI scheme, such as {@code tcp}.
+ * Transports are found with {@link java.util.ServiceLoader}, so a new transport only has to be
+ * listed in {@code META-INF/services/be.kdg.distrib.transport.Transport} to be picked up.
+ *
+ * @see Transports
+ */
+public interface Transport {
+    /**
+     * @return The URI scheme this transport handles, without the colon
+     */
+    String getScheme();
+
+    /**
+     * Opens the stub's side of a channel to a skeleton.
+     * @param address URI of the skeleton
+     * @param messageManager The stub's message manager, its address is the originator of the requests.
+     * It has no socket of its own, a transport that receives replies on that address makes it listen
+     * @return A channel that sends requests to the skeleton
+     * @throws IOException Thrown when the skeleton cannot be reached
+     */
+    TransportChannel connect(URI address, MessageManager messageManager) throws IOException;
+
+    /**
+     * Makes a skeleton's message manager receive the requests that are sent to an address.
+     * @param address URI to listen on
+     * @param messageManager The skeleton's message manager
+     * @return The URI stubs can connect to, with any wildcard in the address filled in
+     * @throws IOException Thrown when the address cannot be bound
+     */
+    URI bind(URI address, MessageManager messageManager) throws IOException;
+}
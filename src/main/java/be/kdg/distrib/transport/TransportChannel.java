@@ -0,0 +1,25 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MethodCallMessage;
+
+import java.io.IOException;
+
+/**
+ * The stub's side of a connection to a skeleton, opened by a {@link Transport}.
+ */
+public interface TransportChannel {
+    /**
+     * Sends a request and waits for its reply.
+     * @param request The request that must be sent
+     * @return The reply of the skeleton
+     * @throws IOException Thrown when the request could not be sent or the reply could not be received
+     */
+    MethodCallMessage call(MethodCallMessage request) throws IOException;
+
+    /**
+     * Sends a request that needs no reply, without waiting for the skeleton.
+     * @param request The request that must be sent
+     * @throws IOException Thrown when the request could not be sent
+     */
+    void send(MethodCallMessage request) throws IOException;
+}
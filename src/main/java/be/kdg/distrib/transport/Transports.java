@@ -0,0 +1,77 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Finds the transport for a URI among the transports that are registered with {@link ServiceLoader}.
+ */
+public final class Transports {
+    private static final Map<String, Transport> TRANSPORTS = load();
+
+    private Transports() {
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * Finds the transport that handles the scheme of a URI.
+     * @param address The URI
+     * @return The transport
+     * @throws IllegalArgumentException Thrown when no transport handles the scheme
+     */
+    public static Transport forUri(URI address) {
+        Transport transport = address.getScheme() == null ? null : TRANSPORTS.get(address.getScheme().toLowerCase());
+        if (transport == null) {
+            throw new IllegalArgumentException("No transport for " + address);
+        }
+        return transport;
+    }
+
+    public static TransportChannel connect(URI address, MessageManager messageManager) throws IOException {
+        return forUri(address).connect(address, messageManager);
+    }
+
+    public static URI bind(URI address, MessageManager messageManager) throws IOException {
+        return forUri(address).bind(address, messageManager);
+    }
+
+    /**
+     * Converts a network address to the URI of the TCP or Unix domain socket it points at.
+     * @param address The network address
+     * @return A {@code tcp://} or {@code unix:} URI
+     */
+    public static URI toUri(NetworkAddress address) {
+        if (address.isUnixDomain()) {
+            return UnixTransport.toUri(address.getSocketPath());
+        }
+        return URI.create(TcpTransport.SCHEME + "://" + address);
+    }
+
+    /**
+     * Converts the URI of a TCP or Unix domain socket to its network address.
+     * @param address The URI
+     * @return The network address, or null when the URI does not point at a socket
+     */
+    public static NetworkAddress toNetworkAddress(URI address) {
+        Transport transport = forUri(address);
+        if (transport instanceof SocketTransport) {
+            return ((SocketTransport) transport).toNetworkAddress(address);
+        }
+        return null;
+    }
+
+    // -- HELPER METHODS -------------------
+    private static Map<String, Transport> load() {
+        Map<String, Transport> transports = new HashMap<>();
+        for (Transport transport : ServiceLoader.load(Transport.class, Transport.class.getClassLoader())) {
+            transports.putIfAbsent(transport.getScheme(), transport);
+        }
+        return transports;
+    }
+}
@@ -0,0 +1,59 @@
+package be.kdg.distrib.transport;
+
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+/**
+ * Sends messages over Unix domain sockets, addressed as {@code unix:/path/of/the.sock}.
+ */
+public final class UnixTransport extends SocketTransport {
+    public static final String SCHEME = "unix";
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public URI bind(URI address, MessageManager messageManager) throws IOException {
+        Path socketPath = toPath(address);
+        if (messageManager.listen(socketPath) == null) {
+            throw new IOException("Unable to bind " + address);
+        }
+        return toUri(socketPath);
+    }
+
+    @Override
+    NetworkAddress toNetworkAddress(URI address) {
+        return new NetworkAddress(toPath(address));
+    }
+
+    /**
+     * Converts the path of a socket file to its URI.
+     * @param socketPath Path of the socket file
+     * @return A {@code unix:} URI
+     */
+    public static URI toUri(Path socketPath) {
+        return pathUri(SCHEME, socketPath);
+    }
+
+    static Path toPath(URI address) {
+        if (address.getPath() == null || address.getPath().isEmpty()) {
+            throw new IllegalArgumentException("Expected " + address.getScheme() + ":/path but got " + address);
+        }
+        return Path.of(address.getPath());
+    }
+
+    static URI pathUri(String scheme, Path path) {
+        try {
+            return new URI(scheme, null, path.toAbsolutePath().toString(), null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid path " + path, e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package be.kdg.distrib.util;
+
+import be.kdg.distrib.codec.Codecs;
+import be.kdg.distrib.codec.ObjectCodec;
+import be.kdg.distrib.exception.ParseException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static be.kdg.distrib.util.PrimitiveUtils.isSimpleType;
+
+/**
+ * What encoding and decoding need to know about a class, looked up with reflection once per class.
+ * Reflection hands out new field, constructor and parameter objects on every lookup, a plan is kept
+ * in a {@link ClassValue} and hands out the same ones on every call: the fields made accessible once,
+ * the no-arg constructor, the keys of the fields below a prefix, and the parameters of methods.
+ * Objects are encoded and decoded by a codec: the one generated at compile time, see {@link Codecs},
+ * or else a {@link RuntimeCodec} that is created with the plan.
+ */
+final class ClassPlan {
+    private static final ClassValue<ClassPlan> PLANS = new ClassValue<ClassPlan>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+            return new ClassPlan(type);
+        }
+    };
+    private static final FieldPlan[] NO_FIELDS = new FieldPlan[0];
+
+    private final Class<?> type;
+    private final boolean simple;
+    private final boolean view;
+    private final Constructor<?> constructor;
+    private final NoSuchMethodException missingConstructor;
+    private final FieldPlan[] fields;
+    private final Map<String, String[]> keys;
+    private final Map<Method, MethodPlan> methods;
+    private final ObjectCodec<Object> codec;
+
+    // -- CONSTRUCTOR ----------------------
+    private ClassPlan(Class<?> type) {
+        this.type = type;
+        this.simple = isSimpleType(type);
+        this.view = type.isInterface() && !this.simple;
+        this.keys = new ConcurrentHashMap<>();
+        this.methods = new ConcurrentHashMap<>();
+
+        Constructor<?> constructor = null;
+        NoSuchMethodException missing = null;
+        if (!this.simple) {
+            try {
+                constructor = type.getConstructor();
+            } catch (NoSuchMethodException e) {
+                missing = e;
+            }
+        }
+        this.constructor = constructor;
+        this.missingConstructor = missing;
+        this.fields = this.simple || type.isInterface() ? NO_FIELDS : findFields(type);
+        ObjectCodec<Object> generated = this.simple ? null : findCodec(type);
+        this.codec = this.simple || generated != null ? generated : new RuntimeCodec(this);
+    }
+
+    /**
+     * @param type Any class
+     * @return The plan of the class, it is created the first time it is asked for
+     */
+    static ClassPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    // -- METHODS --------------------------
+    /**
+     * @return True when values of the class are a single parameter, see {@link PrimitiveUtils#isSimpleType}
+     */
+    boolean isSimple() {
+        return this.simple;
+    }
+
+    /**
+     * @return True when values of the class are decoded as a view, see {@link ParameterViews}
+     */
+    boolean isView() {
+        return this.view;
+    }
+
+    /**
+     * @return The codec of the class, generated or created at runtime, or null for simple classes
+     */
+    ObjectCodec<Object> getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * @return The declared fields, accessible
+     */
+    FieldPlan[] getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Gets the keys of the fields of an object below a prefix, in the order of {@link #getFields()}.
+     * @param prefix Key of the object
+     * @return The keys {@code prefix.field}, the same array for every call with the same prefix
+     */
+    String[] getKeys(String prefix) {
+        String[] keys = this.keys.get(prefix);
+        if (keys == null) {
+            keys = new String[this.fields.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = prefix + "." + this.fields[i].getName();
+            }
+            this.keys.putIfAbsent(prefix, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * @param method A method declared by the class
+     * @return The plan of the method's parameters
+     */
+    MethodPlan getMethod(Method method) {
+        MethodPlan plan = this.methods.get(method);
+        if (plan == null) {
+            plan = this.methods.computeIfAbsent(method, MethodPlan::new);
+        }
+        return plan;
+    }
+
+    /**
+     * Creates an instance with the no-arg constructor.
+     * @return The new instance
+     * @throws ParseException Thrown when the class has no public no-arg constructor, or it failed
+     */
+    Object newInstance() {
+        try {
+            if (this.constructor == null) throw this.missingConstructor;
+            return this.constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new ParseException("Unable to instantiate new object of type " + this.type.getSimpleName(), e);
+        }
+    }
+
+    // -- HELPER METHODS -------------------
+    @SuppressWarnings("unchecked")
+    private static ObjectCodec<Object> findCodec(Class<?> type) {
+        return (ObjectCodec<Object>) Codecs.find(type);
+    }
+
+    private static FieldPlan[] findFields(Class<?> type) {
+        Field[] declared = type.getDeclaredFields();
+        FieldPlan[] fields = new FieldPlan[declared.length];
+        for (int i = 0; i < declared.length; i++) {
+            declared[i].setAccessible(true);
+            fields[i] = new FieldPlan(declared[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * A field of a class, made accessible once.
+     */
+    static final class FieldPlan {
+        private final Field field;
+        private final String name;
+        private final Class<?> type;
+
+        private FieldPlan(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+        }
+
+        Field getField() {
+            return this.field;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        Class<?> getType() {
+            return this.type;
+        }
+    }
+
+    /**
+     * The names and types of the parameters of a method.
+     */
+    static final class MethodPlan {
+        private final String[] names;
+        private final Class<?>[] types;
+
+        private MethodPlan(Method method) {
+            Parameter[] parameters = method.getParameters();
+            this.names = new String[parameters.length];
+            this.types = new Class<?>[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                this.names[i] = parameters[i].getName();
+                this.types[i] = parameters[i].getType();
+            }
+        }
+
+        String[] getNames() {
+            return this.names;
+        }
+
+        Class<?>[] getTypes() {
+            return this.types;
+        }
+    }
+}
@@ -2,15 +2,15 @@ package be.kdg.distrib.util;
 
 import be.kdg.distrib.communication.MethodCallMessage;
 import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.communication.Parameters;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.*;
 
-import static be.kdg.distrib.util.PrimitiveUtils.isSimpleType;
-
 public class InvocationFormatter {
 
     // == PUBLIC METHODS =============================
@@ -21,76 +21,93 @@ public class InvocationFormatter {
      * @return A new MethodCallMessage that represents the invoked method call
      */
     public static MethodCallMessage parseInvokeCall(Method method, Object[] args, NetworkAddress origin) throws IllegalAccessException {
-        // create method call message object
-        MethodCallMessage methodCallMessage = new MethodCallMessage(origin, method.getName());
-
-        // get all mapped arguments
-        Map<String, String> arguments = mapArgs(method.getParameters(), args);
-
-        // add arguments to method call message
-        arguments.forEach(methodCallMessage::setParameter);
+        // collect arguments in declaration order, they are sorted once when complete
+        Parameters.Builder parameters = Parameters.builder();
+        encodeArgs(parameters, ClassPlan.of(method.getDeclaringClass()).getMethod(method).getNames(), args);
 
         // return method call message
-        return methodCallMessage;
+        return new MethodCallMessage(origin, method.getName(), parameters.build());
     }
 
     /**
-     * Encodes an a single object to a list of NameValuePairs with the basename as their
+     * Encodes a single object as typed parameters, with the basename as their
      * key value. Complex objects are mapped under the same basename but also use the name of the
      * field as their identifier. (Keeps encoding until a wrapper class or primitive type is found)
+     * @param parameters Builder that receives the parameters
      * @param baseName Name used as key value
      * @param object Object that must be encoded
-     * @return Returns a list of NameValuePairs
      * @throws IllegalAccessException Thrown when unable to access the getter of a specific field
      */
-    public static Map<String, String> encodeObjectAsPairs(String baseName, Object object) throws IllegalAccessException {
-        // return single name value pair if object is a primitive or wrapper type
-        if (isSimpleType(object.getClass())) {
-            return Map.of(baseName, String.valueOf(object));
+    public static void encodeObject(Parameters.Builder parameters, String baseName, Object object) throws IllegalAccessException {
+        // add single typed value if object is a primitive or wrapper type
+        ClassPlan plan = ClassPlan.of(object.getClass());
+        if (plan.isSimple()) {
+            parameters.add(baseName, ParameterValue.ofObject(object));
+            return;
         }
 
-        // get fields of non primitive object
-        Field[] fields = object.getClass().getDeclaredFields();
-
-        // loop over fields in non primitive object
-        Map<String, String> pairs = new HashMap<>();
-        for (Field f : fields) {
-
-            // make field accessible
-            f.setAccessible(true);
-
-            // use recursion to get nested objects
-            String extendedBaseName = baseName + "." + f.getName();
-            pairs.putAll(encodeObjectAsPairs(extendedBaseName, f.get(object)));
+        // the codec of the class encodes its fields, nested objects come back here
+        plan.getCodec().encode(parameters, baseName, object);
+    }
 
+    /**
+     * Recreates the arguments of a call from the parameters of its message.
+     * Arguments that are declared as an interface become lazy views, see {@link ParameterViews}.
+     * @param parameters The parameters of the invoked method
+     * @param args The parameters of the message, sorted by key
+     * @return The arguments to invoke the method with
+     */
+    public static Object[] formatCallParameters(Parameter[] parameters, Parameters args) {
+        String[] names = new String[parameters.length];
+        Class<?>[] types = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            names[i] = parameters[i].getName();
+            types[i] = parameters[i].getType();
         }
+        return formatCallParameters(names, types, args);
+    }
 
-        return pairs;
+    /**
+     * Recreates the arguments of a call from the parameters of its message.
+     * The names and types of the method's parameters are only looked up the first time.
+     * @param method The invoked method
+     * @param args The parameters of the message, sorted by key
+     * @return The arguments to invoke the method with
+     */
+    public static Object[] formatCallParameters(Method method, Parameters args) {
+        ClassPlan.MethodPlan plan = ClassPlan.of(method.getDeclaringClass()).getMethod(method);
+        return formatCallParameters(plan.getNames(), plan.getTypes(), args);
     }
 
-    public static Object[] formatCallParameters(Parameter[] parameters, Map<String, String> args) {
-        Object[] paramValues = new Object[parameters.length];
+    // == PRIVATE METHODS ============================
+    private static Object[] formatCallParameters(String[] names, Class<?>[] types, Parameters args) {
+        Object[] paramValues = new Object[names.length];
+
+        // the parameters are put in a tree once, every argument is a node of its root
+        ParameterTree tree = ParameterTree.of(args);
 
 
         int amountOfValuesUsed = 0;
-        for (int i = 0; i < parameters.length; i++) {
-            Parameter p = parameters[i];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            Class<?> type = types[i];
 
-            // get all values that start with param name
-            Map<String, String> matchedValues = ObjectParser.getKeysStartingWith(p.getName(), args);
+            // get the values below the param name
+            ParameterTree node = tree.child(name);
 
             // throw error if no matched values
-            if (matchedValues.size() == 0)
+            if (node == null)
                 throw new IllegalArgumentException("Arguments lacked certain values to recreate a parameter");
 
-            // parse values into object
-            Object o = ObjectParser.parse(p.getType(), matchedValues);
-
-            // add object to param values
-            paramValues[i] = o;
+            // parameters declared as an interface are decoded lazily, when the implementation reads them
+            if (ClassPlan.of(type).isView()) {
+                paramValues[i] = ParameterViews.create(type, node, name);
+            } else {
+                paramValues[i] = ObjectParser.parse(type, node);
+            }
 
             // we have used the values, add to counter
-            amountOfValuesUsed += matchedValues.size();
+            amountOfValuesUsed += node.size();
         }
 
 
@@ -102,35 +119,26 @@ public class InvocationFormatter {
         return paramValues;
     }
 
-    // == PRIVATE METHODS ============================
     /**
-     * Maps arguments and parameters as name value pairs, by using the parameter name as key
+     * Encodes arguments as typed parameters, by using the parameter name as key
      * and the object as value. Complex object get nested keys prefixed by the associated parameter.
-     * @param parameters The parameters associated with the arguments
+     * @param builder Builder that receives the parameters
+     * @param parameters The names of the parameters associated with the arguments
      * @param args The arguments that match the parameters
-     * @return A list of NameValuePairs
-     * @throws IllegalAccessException Thrown when the length of the parameters do not match the length of the arguments
+     * @throws IllegalAccessException Thrown when unable to access the getter of a specific field
      */
-    private static Map<String, String> mapArgs(Parameter[] parameters, Object[] args) throws IllegalAccessException {
-        // return empty list if no params or args
-        if (parameters == null || args == null) return Collections.emptyMap();
+    private static void encodeArgs(Parameters.Builder builder, String[] parameters, Object[] args) throws IllegalAccessException {
+        // nothing to encode if no params or args
+        if (parameters == null || args == null) return;
 
         // check if amount of params matches amount of args
         if (parameters.length != args.length)
             throw new IllegalArgumentException("The amount of parameters expected and arguments passed does not match");
 
-        // map arguments to name value pairs
-        Map<String, String> pairs = new HashMap<>();
+        // encode every argument under the name of its parameter
         for (int i = 0; i < args.length; i++) {
-            Parameter p = parameters[i];
-            Object o = args[i];
-
-            // encode object and add to pairs
-            pairs.putAll(encodeObjectAsPairs(p.getName(), o));
+            encodeObject(builder, parameters[i], args[i]);
         }
-
-        // return name value pairs
-        return pairs;
     }
 
 }
@@ -0,0 +1,111 @@
+package be.kdg.distrib.util;
+
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.exception.ParseException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates lazy views on the parameters of a message.
+ * A parameter that is declared as an interface is not decoded up front, the implementation
+ * receives a view that reads the fields from the message when its getters are called.
+ * Fields that are never read are never converted, nested interfaces are views of their own.
+ * <p>
+ * A getter {@code getName()}, {@code isName()} or {@code name()} reads the field {@code name}.
+ */
+public class ParameterViews {
+
+    /**
+     * Creates a view on all parameters below a node.
+     * @param type The interface the view implements
+     * @param node The node of the object in the tree of parameters, its children are the fields
+     * @param prefix The key of the object, to describe the view
+     * @return A view that implements the interface
+     */
+    public static Object create(Class<?> type, ParameterTree node, String prefix) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new ViewHandler(node, prefix));
+    }
+
+    /**
+     * Gets the name of the field a getter reads.
+     * @param getter Method of a view interface
+     * @return The name of the field
+     */
+    static String getFieldName(Method getter) {
+        String name = getter.getName();
+        int start = name.startsWith("get") && name.length() > 3 ? 3 : name.startsWith("is") && name.length() > 2 ? 2 : 0;
+        if (start == 0) return name;
+
+        return Character.toLowerCase(name.charAt(start)) + name.substring(start + 1);
+    }
+
+    private static final class ViewHandler implements InvocationHandler {
+        private final ParameterTree node;
+        private final String prefix;
+        private final Map<Method, Object> fields;
+
+        private ViewHandler(ParameterTree node, String prefix) {
+            this.node = node;
+            this.prefix = prefix;
+            this.fields = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            // methods of object describe the view itself
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    default: return "View of " + this.prefix + " " + this.node;
+                }
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            if (method.getParameterCount() > 0 || method.getReturnType().equals(Void.TYPE)) {
+                throw new UnsupportedOperationException("Method '" + method.getName() + "' is not a getter");
+            }
+
+            // a field is decoded the first time it is read
+            Object value = this.fields.get(method);
+            if (value == null) {
+                value = read(method);
+                if (value != null) this.fields.put(method, value);
+            }
+            return value;
+        }
+
+        private Object read(Method getter) {
+            Class<?> type = getter.getReturnType();
+            String name = getFieldName(getter);
+            ParameterTree field = this.node.child(name);
+
+            ClassPlan plan = ClassPlan.of(type);
+            if (plan.isSimple()) {
+                ParameterValue value = field == null ? null : field.getValue();
+                if (value == null) {
+                    String key = this.prefix + "." + name;
+                    throw new ParseException("No value for " + key, null);
+                }
+                try {
+                    return value.as(type);
+                } catch (RuntimeException e) {
+                    throw new ParseException(String.format("Unable to parse '%s' to type %s", value, type.getSimpleName()), e);
+                }
+            }
+            if (plan.isView()) {
+                if (field == null) {
+                    throw new ParseException("No value for " + this.prefix + "." + name, null);
+                }
+                return create(type, field, this.prefix + "." + name);
+            }
+            return ObjectParser.parse(type, field);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package be.kdg.distrib.util;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
 
 public class PrimitiveUtils {
@@ -27,12 +30,21 @@ public class PrimitiveUtils {
         return WRAPPERS.contains(type);
     }
     public static boolean isSimpleType(Class<?> type) {
-        return isWrappper(type) || type.isPrimitive();
+        return isWrappper(type) || type.isPrimitive() || type == byte[].class || isStreamType(type);
+    }
+
+    /**
+     * Checks if values of a type are streamed instead of being part of a message.
+     * @param type Declared type, or the class of a value
+     * @return True for buffers, files and input streams
+     */
+    public static boolean isStreamType(Class<?> type) {
+        return ByteBuffer.class.isAssignableFrom(type) || Path.class.isAssignableFrom(type) || InputStream.class.isAssignableFrom(type);
     }
 
     public static Class<?> getWrapperType(Class<?> type) {
-        // type is already a wrapper class
-        if (isWrappper(type)) return type;
+        // type is already a wrapper class, or has none
+        if (isWrappper(type) || !type.isPrimitive()) return type;
 
 
 
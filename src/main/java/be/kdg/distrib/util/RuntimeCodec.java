@@ -0,0 +1,161 @@
+package be.kdg.distrib.util;
+
+import be.kdg.distrib.codec.Codecs;
+import be.kdg.distrib.codec.ObjectCodec;
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.communication.Parameters;
+import be.kdg.distrib.exception.ParseException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * The codec of a class that has no generated codec, created on first use and kept in its {@link ClassPlan}.
+ * Fields are read and written with method handles, typed for the field: a primitive field is read into a
+ * typed value and written from the value it is parsed to, without boxing it in between as {@link Field#get} does.
+ * Nested objects are handled by the codec of their own class.
+ */
+final class RuntimeCodec implements ObjectCodec<Object> {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final ClassPlan plan;
+    private final FieldHandle[] fields;
+
+    // -- CONSTRUCTOR ----------------------
+    RuntimeCodec(ClassPlan plan) {
+        this.plan = plan;
+        ClassPlan.FieldPlan[] declared = plan.getFields();
+        this.fields = new FieldHandle[declared.length];
+        for (int i = 0; i < declared.length; i++) {
+            this.fields[i] = new FieldHandle(declared[i]);
+        }
+    }
+
+    // -- METHODS --------------------------
+    @Override
+    public void encode(Parameters.Builder parameters, String prefix, Object object) throws IllegalAccessException {
+        // keys below the prefix were created once
+        String[] keys = this.plan.getKeys(prefix);
+        for (int i = 0; i < this.fields.length; i++) {
+            this.fields[i].encode(parameters, keys[i], object);
+        }
+    }
+
+    @Override
+    public Object decode(ParameterTree fields) {
+        Object instance = this.plan.newInstance();
+        for (FieldHandle field : this.fields) {
+            field.decode(instance, fields);
+        }
+        return instance;
+    }
+
+    /**
+     * Reads and writes one field, with handles typed for the field.
+     */
+    private static final class FieldHandle {
+        private final String name;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final IllegalAccessException readOnly;
+
+        private FieldHandle(ClassPlan.FieldPlan plan) {
+            Field field = plan.getField();
+            this.name = plan.getName();
+            this.type = plan.getType();
+            // the field was made accessible, its handles skip the access checks
+            boolean isStatic = Modifier.isStatic(field.getModifiers());
+            this.getter = getter(field, isStatic);
+
+            MethodHandle setter = null;
+            IllegalAccessException readOnly = null;
+            try {
+                setter = setter(field, isStatic);
+            } catch (IllegalAccessException e) {
+                // static final fields, which reflection could not set either
+                readOnly = e;
+            }
+            this.setter = setter;
+            this.readOnly = readOnly;
+        }
+
+        private void encode(Parameters.Builder parameters, String key, Object object) throws IllegalAccessException {
+            try {
+                if (this.type == int.class) parameters.add(key, ParameterValue.of((int) this.getter.invokeExact(object)));
+                else if (this.type == long.class) parameters.add(key, ParameterValue.of((long) this.getter.invokeExact(object)));
+                else if (this.type == double.class) parameters.add(key, ParameterValue.of((double) this.getter.invokeExact(object)));
+                else if (this.type == boolean.class) parameters.add(key, ParameterValue.of((boolean) this.getter.invokeExact(object)));
+                else if (this.type == char.class) parameters.add(key, ParameterValue.of((char) this.getter.invokeExact(object)));
+                else if (this.type == float.class) parameters.add(key, ParameterValue.of((float) this.getter.invokeExact(object)));
+                else if (this.type == short.class) parameters.add(key, ParameterValue.of((short) this.getter.invokeExact(object)));
+                else if (this.type == byte.class) parameters.add(key, ParameterValue.of((byte) this.getter.invokeExact(object)));
+                // use recursion to get nested objects
+                else InvocationFormatter.encodeObject(parameters, key, (Object) this.getter.invokeExact(object));
+            } catch (RuntimeException | Error | IllegalAccessException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Unable to read field " + this.name, t);
+            }
+        }
+
+        private void decode(Object instance, ParameterTree fields) {
+            if (this.setter == null) {
+                throw new ParseException("Unable to set new value to field " + this.name, this.readOnly);
+            }
+            try {
+                if (this.type == int.class) this.setter.invokeExact(instance, Codecs.asInt(fields, this.name));
+                else if (this.type == long.class) this.setter.invokeExact(instance, Codecs.asLong(fields, this.name));
+                else if (this.type == double.class) this.setter.invokeExact(instance, Codecs.asDouble(fields, this.name));
+                else if (this.type == boolean.class) this.setter.invokeExact(instance, Codecs.asBoolean(fields, this.name));
+                else if (this.type == char.class) this.setter.invokeExact(instance, Codecs.asChar(fields, this.name));
+                else if (this.type == float.class) this.setter.invokeExact(instance, Codecs.asFloat(fields, this.name));
+                else if (this.type == short.class) this.setter.invokeExact(instance, Codecs.asShort(fields, this.name));
+                else if (this.type == byte.class) this.setter.invokeExact(instance, Codecs.asByte(fields, this.name));
+                else {
+                    // the node of the field holds its value or its own fields
+                    Object value = ObjectParser.parse(this.type, fields.child(this.name));
+                    this.setter.invokeExact(instance, value);
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ParseException("Unable to set new value to field " + this.name, e);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Unable to set new value to field " + this.name, t);
+            }
+        }
+
+        // -- HELPER METHODS ---------------
+        /**
+         * @return A handle {@code (Object)field} with the primitive type of the field, or {@code Object} for other fields
+         */
+        private static MethodHandle getter(Field field, boolean isStatic) {
+            try {
+                MethodHandle getter = LOOKUP.unreflectGetter(field);
+                if (isStatic) getter = MethodHandles.dropArguments(getter, 0, field.getDeclaringClass());
+                return getter.asType(MethodType.methodType(erase(field.getType()), Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to read field " + field.getName(), e);
+            }
+        }
+
+        /**
+         * @return A handle {@code (Object, field)void} like the getter
+         * @throws IllegalAccessException Thrown when the field can not be written
+         */
+        private static MethodHandle setter(Field field, boolean isStatic) throws IllegalAccessException {
+            MethodHandle setter = LOOKUP.unreflectSetter(field);
+            if (isStatic) setter = MethodHandles.dropArguments(setter, 0, field.getDeclaringClass());
+            return setter.asType(MethodType.methodType(void.class, Object.class, erase(field.getType())));
+        }
+
+        private static Class<?> erase(Class<?> type) {
+            return type.isPrimitive() ? type : Object.class;
+        }
+    }
+}
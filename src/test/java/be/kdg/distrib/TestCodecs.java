@@ -0,0 +1,176 @@
+package be.kdg.distrib;
+
+import be.kdg.distrib.codec.Codecs;
+import be.kdg.distrib.communication.ParameterTree;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.communication.Parameters;
+import be.kdg.distrib.exception.ParseException;
+import be.kdg.distrib.testclasses.TestObject;
+import be.kdg.distrib.testclasses.TestObject2;
+import be.kdg.distrib.util.InvocationFormatter;
+import be.kdg.distrib.util.ObjectParser;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestCodecs {
+
+    @Test
+    public void testCodecsAreGeneratedForObjectsOfRemoteInterfaces() {
+        assertNotNull(Codecs.find(TestObject.class));
+        assertNotNull(Codecs.find(TestObject2.class));
+        assertNull(Codecs.find(Unmarked.class));
+    }
+
+    @Test
+    public void testGeneratedCodecWritesTheFieldsReflectionWould() throws IllegalAccessException {
+        TestObject object = new TestObject();
+        object.setName("Joe");
+        object.setAge(42);
+        object.setGender('m');
+        object.setDeleted(true);
+
+        Parameters.Builder builder = Parameters.builder();
+        InvocationFormatter.encodeObject(builder, "arg0", object);
+        Parameters parameters = builder.build();
+
+        assertEquals(4, parameters.size());
+        assertEquals("42", parameters.get("arg0.age").toString());
+        assertEquals("true", parameters.get("arg0.deleted").toString());
+        assertEquals("m", parameters.get("arg0.gender").toString());
+        assertEquals("Joe", parameters.get("arg0.name").toString());
+    }
+
+    @Test
+    public void testGeneratedCodecUsesConstructorWithoutSetters() {
+        Map<String, ParameterValue> fields = new HashMap<>();
+        fields.put("bla", ParameterValue.of("booo"));
+        fields.put("number", ParameterValue.of("12"));
+
+        TestObject2 object = (TestObject2) ObjectParser.parse(TestObject2.class, fields);
+        assertEquals("booo", object.getBla());
+        assertEquals(12, object.getNumber());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testGeneratedCodecReportsUnparsableField() {
+        Map<String, ParameterValue> fields = new HashMap<>();
+        fields.put("bla", ParameterValue.of("booo"));
+        fields.put("number", ParameterValue.of("twelve"));
+
+        ObjectParser.parse(TestObject2.class, fields);
+    }
+
+    @Test
+    public void testObjectWithoutCodecGetsOneAtRuntime() {
+        Map<String, ParameterValue> fields = new HashMap<>();
+        fields.put("value", ParameterValue.of(7));
+
+        Unmarked object = (Unmarked) ObjectParser.parse(Unmarked.class, fields);
+        assertEquals(7, object.value);
+    }
+
+    @Test
+    public void testRuntimeCodecRoundTripsEveryFieldType() throws IllegalAccessException {
+        Mixed object = new Mixed();
+        object.value = 7;
+        object.big = 1L << 40;
+        object.small = -3;
+        object.ratio = 0.25;
+        object.flag = true;
+        object.letter = 'q';
+        object.text = "nested";
+        object.nested = new Leaf();
+        object.nested.value = 8;
+        object.nested.text = "leaf";
+
+        Parameters.Builder builder = Parameters.builder();
+        InvocationFormatter.encodeObject(builder, "arg0", object);
+        Parameters parameters = builder.build();
+        assertEquals("8", parameters.get("arg0.nested.value").toString());
+
+        Mixed copy = (Mixed) ObjectParser.parse(Mixed.class, ParameterTree.of(parameters).child("arg0"));
+        assertEquals(7, copy.value);
+        assertEquals(1L << 40, copy.big);
+        assertEquals(-3, copy.small);
+        assertEquals(0.25, copy.ratio, 0);
+        assertEquals(true, copy.flag);
+        assertEquals('q', copy.letter);
+        assertEquals("nested", copy.text);
+        assertEquals(8, copy.nested.value);
+        assertEquals("leaf", copy.nested.text);
+    }
+
+    @Test
+    public void testFieldsThatShareAPrefixStayApart() throws IllegalAccessException {
+        Prefixed object = new Prefixed();
+        object.name = 1;
+        object.nameX = 2;
+        object.n = "three";
+
+        Parameters.Builder builder = Parameters.builder();
+        InvocationFormatter.encodeObject(builder, "arg1", object);
+        InvocationFormatter.encodeObject(builder, "arg10", 10);
+        ParameterTree tree = ParameterTree.of(builder.build());
+
+        assertEquals(3, tree.child("arg1").size());
+        assertEquals(1, tree.child("arg10").size());
+        Prefixed copy = (Prefixed) ObjectParser.parse(Prefixed.class, tree.child("arg1"));
+        assertEquals(1, copy.name);
+        assertEquals(2, copy.nameX);
+        assertEquals("three", copy.n);
+        assertNull(tree.child("arg"));
+    }
+
+    @Test
+    public void testNodesWithManyChildrenFindEveryChild() {
+        Parameters.Builder builder = Parameters.builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("arg" + i + ".value", ParameterValue.of(i));
+        }
+        // "Aa" and "BB" have the same hash
+        builder.add("Aa", ParameterValue.of("Aa"));
+        builder.add("BB", ParameterValue.of("BB"));
+        ParameterTree tree = ParameterTree.of(builder.build());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, tree.child("arg" + i).child("value").getValue().asInt());
+        }
+        assertEquals("Aa", tree.child("Aa").getValue().toString());
+        assertEquals("BB", tree.child("BB").getValue().toString());
+        assertNull(tree.child("arg1000"));
+        assertNull(tree.child("arg"));
+        assertEquals(1002, tree.size());
+    }
+
+    public static class Unmarked {
+        private int value;
+    }
+
+    public static class Mixed {
+        private int value;
+        private long big;
+        private short small;
+        private double ratio;
+        private boolean flag;
+        private char letter;
+        private String text;
+        private Leaf nested;
+    }
+
+    public static class Prefixed {
+        private int name;
+        private int nameX;
+        private String n;
+    }
+
+    public static class Leaf {
+        private int value;
+        private String text;
+    }
+}
@@ -0,0 +1,672 @@
+package be.kdg.distrib;
+
+import be.kdg.distrib.communication.ConnectionPool;
+import be.kdg.distrib.communication.MessageCodecs;
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.MethodCallMessage;
+import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.communication.WireFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestMessageManager {
+    private MessageManager sender;
+    private MessageManager receiver;
+
+    @Before
+    public void setup() {
+        sender = new MessageManager(new ConnectionPool(1, 1000));
+        receiver = new MessageManager();
+    }
+
+    @Test(timeout = 1000)
+    public void testConsecutiveMessagesOverOneConnection() {
+        for (int i = 0; i < 3; i++) {
+            MethodCallMessage message = new MethodCallMessage(sender.getMyAddress(), "testMethod" + i);
+            message.setParameter("arg0", "value " + i);
+            sender.send(message, receiver.getMyAddress());
+        }
+        for (int i = 0; i < 3; i++) {
+            MethodCallMessage message = receiver.wReceive();
+            assertEquals("testMethod" + i, message.getMethodName());
+            assertEquals("value " + i, message.getParameter("arg0"));
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testMessageTerminatedByEndOfStream() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+            writer.println("MethodCallMessage");
+            writer.println("originator.IP \"127.0.0.1\"");
+            writer.println("originator.port \"1234\"");
+            writer.println("methodName testMethod2");
+            writer.println("arg0 \"legacy\"");
+        }
+        MethodCallMessage message = receiver.wReceive();
+        assertEquals("testMethod2", message.getMethodName());
+        assertEquals("legacy", message.getParameter("arg0"));
+        assertEquals(1234, message.getOriginator().getPortNumber());
+    }
+
+    @Test(timeout = 1000)
+    public void testStalledSenderDoesNotBlockOthers() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket stalled = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            PrintWriter writer = new PrintWriter(stalled.getOutputStream(), true);
+            writer.println("MethodCallMessage");
+            writer.println("originator.IP \"127.0.0.1\"");
+
+            sender.send(new MethodCallMessage(sender.getMyAddress(), "testMethod1"), address);
+            assertEquals("testMethod1", receiver.wReceive().getMethodName());
+
+            writer.println("originator.port \"1234\"");
+            writer.println("methodName testMethod5");
+            writer.println(";");
+            assertEquals("testMethod5", receiver.wReceive().getMethodName());
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testMessagesArrivingOneByteAtATime() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            socket.setTcpNoDelay(true);
+            String messages = "MethodCallMessage\n"
+                    + "originator.IP \"127.0.0.1\"\n"
+                    + "originator.port \"1234\"\n"
+                    + "methodName testMethod1 / a comment; not the end\n"
+                    + "arg0 \"semi;colon \\\"quoted\\\"\"\n"
+                    + ";\n"
+                    + "MethodCallMessage originator.IP \"127.0.0.1\" originator.port \"1234\" methodName testMethod2;";
+            for (byte b : messages.getBytes()) {
+                socket.getOutputStream().write(b);
+                socket.getOutputStream().flush();
+            }
+
+            MethodCallMessage first = receiver.wReceive();
+            assertEquals("testMethod1", first.getMethodName());
+            assertEquals("semi;colon \"quoted\"", first.getParameter("arg0"));
+            assertEquals("testMethod2", receiver.wReceive().getMethodName());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testCallReceivesReplyOnConnection() {
+        Thread server = new Thread(() -> {
+            MethodCallMessage request = receiver.wReceive();
+            MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+            reply.setParameter("result", request.getParameter("arg0"));
+            receiver.reply(request, reply);
+        });
+        server.start();
+
+        MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod2");
+        request.setParameter("arg0", "echo");
+        MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+
+        assertTrue(request.isReplyOnConnection());
+        assertEquals("echo", reply.getParameter("result"));
+    }
+
+    @Test(timeout = 1000)
+    public void testTextAndBinarySendersAreBothUnderstood() {
+        MessageManager textSender = new MessageManager(new ConnectionPool(1, 1000, WireFormat.TEXT));
+        for (MessageManager manager : new MessageManager[]{sender, textSender}) {
+            MethodCallMessage message = new MethodCallMessage(manager.getMyAddress(), "testMethod3");
+            message.setParameter("arg0", "-42");
+            message.setParameter("arg1", "007");
+            message.setParameter("arg2", "true");
+            message.setParameter("arg3", "hello world");
+            message.setParameter("arg4", "");
+            manager.send(message, receiver.getMyAddress());
+
+            MethodCallMessage received = receiver.wReceive();
+            assertEquals("testMethod3", received.getMethodName());
+            assertEquals(message.getParameters(), received.getParameters());
+            assertEquals(manager.getMyAddress(), received.getOriginator());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testTypedValuesKeepTheirTypeOnBinaryConnections() {
+        MessageManager textSender = new MessageManager(new ConnectionPool(1, 1000, WireFormat.TEXT));
+        for (MessageManager manager : new MessageManager[]{sender, textSender}) {
+            MethodCallMessage message = new MethodCallMessage(manager.getMyAddress(), "testMethod3");
+            message.setParameter("arg0", -42);
+            message.setParameter("arg1", 1L << 40);
+            message.setParameter("arg2", 42.5);
+            message.setParameter("arg3", 0.1f);
+            message.setParameter("arg4", true);
+            message.setParameter("arg5", 'c');
+            message.setParameter("arg6", ParameterValue.of((short) -7));
+            message.setParameter("arg7", new byte[]{0, 1, -1});
+            manager.send(message, receiver.getMyAddress());
+
+            MethodCallMessage received = receiver.wReceive();
+            assertEquals(message.getParameters(), received.getParameters());
+            assertEquals(-42, received.getParameterValue("arg0").asInt());
+            assertEquals(1L << 40, received.getParameterValue("arg1").asLong());
+            assertEquals(42.5, received.getParameterValue("arg2").asDouble(), 0);
+            assertEquals(0.1f, received.getParameterValue("arg3").asFloat(), 0);
+            assertTrue(received.getParameterValue("arg4").asBoolean());
+            assertEquals('c', received.getParameterValue("arg5").asChar());
+            assertEquals(-7, received.getParameterValue("arg6").asShort());
+            assertArrayEquals(new byte[]{0, 1, -1}, received.getParameterValue("arg7").asBytes());
+        }
+
+        // text carries no types, binary frames do
+        MethodCallMessage message = new MethodCallMessage(sender.getMyAddress(), "testMethod3");
+        message.setParameter("arg0", 42.5);
+        sender.send(message, receiver.getMyAddress());
+        assertEquals(ParameterValue.Type.DOUBLE, receiver.wReceive().getParameterValue("arg0").getType());
+    }
+
+    @Test(timeout = 2000)
+    public void testFramesLargerThanOneBuffer() {
+        String value = String.join("", Collections.nCopies(100_000, "\u00e9x"));
+        Thread server = new Thread(() -> {
+            MethodCallMessage request = receiver.wReceive();
+            MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+            reply.setParameter("result", request.getParameter("arg0"));
+            receiver.reply(request, reply);
+        });
+        server.start();
+
+        MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod2");
+        request.setParameter("arg0", value);
+        assertEquals(value, sender.call(request, receiver.getMyAddress()).getParameter("result"));
+    }
+
+    @Test(timeout = 2000)
+    public void testCompressedCallsOfEverySize() {
+        MessageManager compressingSender = new MessageManager(new ConnectionPool(1, 1000, WireFormat.COMPRESSED));
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameters().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        for (int size : new int[]{1, 10, 100, 1000, 100, 10_000, 1}) {
+            MethodCallMessage request = new MethodCallMessage(compressingSender.getMyAddress(), "testMethod12");
+            for (int i = 0; i < size; i++) {
+                request.setParameter("arg0.field" + i, "value " + i);
+            }
+            MethodCallMessage reply = compressingSender.call(request, receiver.getMyAddress());
+            assertEquals(size, reply.getParameters().size());
+            assertEquals("value " + (size - 1), reply.getParameter("result.arg0.field" + (size - 1)));
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testFrameThatInflatesPastTheMaximumIsRejected() {
+        MessageManager compressingSender = new MessageManager(new ConnectionPool(1, 1000, WireFormat.COMPRESSED));
+        MethodCallMessage request = new MethodCallMessage(compressingSender.getMyAddress(), "testMethod2");
+        request.setParameter("arg0", String.join("", Collections.nCopies(100_000, "x")));
+
+        // the compressed frame is small, only its content is too large
+        MessageCodecs.setMaxFrameSize(16_384);
+        try {
+            assertNull(compressingSender.call(request, receiver.getMyAddress()));
+        } finally {
+            MessageCodecs.setMaxFrameSize(MessageCodecs.DEFAULT_MAX_FRAME_SIZE);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testStreamsFollowTheirMessageBothWays() throws IOException {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        Random random = new Random(19);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        while (buffer.hasRemaining()) buffer.put((byte) random.nextInt());
+        buffer.flip();
+        byte[] fileContent = new byte[3 << 20];
+        random.nextBytes(fileContent);
+        Path file = Files.createTempFile("test", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, fileContent);
+        byte[] streamContent = new byte[100_000];
+        random.nextBytes(streamContent);
+
+        for (int round = 0; round < 2; round++) {
+            MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+            request.setParameter("arg0", ParameterValue.of(buffer));
+            request.setParameter("arg1", ParameterValue.of(file));
+            request.setParameter("arg2", ParameterValue.of(new ByteArrayInputStream(streamContent)));
+            request.setParameter("arg3", ParameterValue.of(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+            request.setParameter("arg4", "after the streams");
+            MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+
+            assertEquals(buffer, reply.getParameterValue("result.arg0").asByteBuffer());
+            assertArrayEquals(fileContent, Files.readAllBytes(reply.getParameterValue("result.arg1").asPath()));
+            assertArrayEquals(streamContent, reply.getParameterValue("result.arg2").asBytes());
+            assertArrayEquals(new byte[]{1, 2, 3}, reply.getParameterValue("result.arg3").asBytes());
+            assertEquals("after the streams", reply.getParameter("result.arg4"));
+        }
+        assertEquals("the buffer is left untouched", 1 << 20, buffer.remaining());
+    }
+
+    @Test(timeout = 5000)
+    public void testInputStreamsAreSentInChunksAndClosed() throws IOException {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) ->
+                        reply.setParameter("result." + key, ParameterValue.of(value.asInputStream())));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        byte[] content = new byte[200_000];
+        new Random(19).nextBytes(content);
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream source = new ByteArrayInputStream(content) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+        request.setParameter("arg0", ParameterValue.of(source));
+        request.setParameter("arg1", ParameterValue.of(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+        MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+
+        assertTrue("the source is closed once it was sent", closed.get());
+        assertArrayEquals(content, reply.getParameterValue("result.arg0").asBytes());
+        assertArrayEquals(new byte[]{1, 2, 3}, reply.getParameterValue("result.arg1").asBytes());
+    }
+
+    @Test(timeout = 5000)
+    public void testMessageWithUnreadableStreamFailsOnlyItself() throws IOException {
+        Path missing = Files.createTempDirectory("distrib").resolve("missing.bin");
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                reply.setParameter("result.arg0", request.getParameter("arg0"));
+                if ("fail".equals(request.getParameter("arg0"))) {
+                    reply.setParameter("result.arg1", ParameterValue.of(missing));
+                }
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        MethodCallMessage unsendable = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+        unsendable.setParameter("arg0", "never sent");
+        unsendable.setParameter("arg1", ParameterValue.of(missing));
+        assertNull(sender.call(unsendable, receiver.getMyAddress()));
+
+        // the reply can not be encoded, the call fails instead of waiting for it
+        MethodCallMessage failing = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+        failing.setParameter("arg0", "fail");
+        assertNull(sender.call(failing, receiver.getMyAddress()));
+
+        for (String text : new String[]{"first", "second"}) {
+            MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+            request.setParameter("arg0", text);
+            MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+            assertEquals(text, reply.getParameter("result.arg0"));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testReceivedStreamFilesAreDeletedOnceReleased() throws IOException {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+                request.releaseStreams();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        byte[] large = new byte[1 << 20];
+        new Random(19).nextBytes(large);
+        MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+        request.setParameter("arg0", ParameterValue.of(ByteBuffer.wrap(large)));
+        request.setParameter("arg1", ParameterValue.of(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+        MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+
+        Path received = reply.getParameterValue("result.arg0").asPath();
+        Path written = reply.getParameterValue("result.arg1").asPath();
+        assertArrayEquals(large, Files.readAllBytes(received));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(written));
+
+        reply.releaseStreams();
+        assertFalse(Files.exists(received));
+        assertFalse(Files.exists(written));
+    }
+
+    @Test(timeout = 5000)
+    public void testStreamsLargerThanTheMaximumAreRejected() {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        byte[] large = new byte[200_000];
+        MessageCodecs.setMaxStreamSize(100_000);
+        try {
+            // a declared length is refused right away, chunks once they add up to more
+            MethodCallMessage declared = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+            declared.setParameter("arg0", ParameterValue.of(ByteBuffer.wrap(large)));
+            assertNull(sender.call(declared, receiver.getMyAddress()));
+
+            MethodCallMessage chunked = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+            chunked.setParameter("arg0", ParameterValue.of(new ByteArrayInputStream(large)));
+            assertNull(sender.call(chunked, receiver.getMyAddress()));
+
+            MethodCallMessage small = new MethodCallMessage(sender.getMyAddress(), "testMethod19");
+            small.setParameter("arg0", ParameterValue.of(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+            MethodCallMessage reply = sender.call(small, receiver.getMyAddress());
+            assertArrayEquals(new byte[]{1, 2, 3}, reply.getParameterValue("result.arg0").asBytes());
+        } finally {
+            MessageCodecs.setMaxStreamSize(MessageCodecs.DEFAULT_MAX_STREAM_SIZE);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testEveryCodecCarriesCalls() {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        for (String codec : MessageCodecs.getNames()) {
+            MessageManager codecSender = new MessageManager(new ConnectionPool(1, 1000, WireFormat.BINARY, codec));
+            MethodCallMessage request = new MethodCallMessage(codecSender.getMyAddress(), "testMethod3");
+            request.setParameter("arg0", -42);
+            request.setParameter("arg1", 1L << 40);
+            request.setParameter("arg2", 42.5);
+            request.setParameter("arg3", "value with spaces");
+            request.setParameter("arg4", true);
+            request.setParameter("arg5", new byte[]{0, 1, -1});
+            MethodCallMessage reply = codecSender.call(request, receiver.getMyAddress());
+
+            assertEquals(codec, request.getParameters().size(), reply.getParameters().size());
+            assertEquals(codec, -42, reply.getParameterValue("result.arg0").asInt());
+            assertEquals(codec, 1L << 40, reply.getParameterValue("result.arg1").asLong());
+            assertEquals(codec, 42.5, reply.getParameterValue("result.arg2").asDouble(), 0);
+            assertEquals(codec, "value with spaces", reply.getParameter("result.arg3"));
+            assertTrue(codec, reply.getParameterValue("result.arg4").asBoolean());
+            assertArrayEquals(codec, new byte[]{0, 1, -1}, reply.getParameterValue("result.arg5").asBytes());
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testServerAnswersBinaryHello() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            socket.getOutputStream().write(new byte[]{0, 'M', 'C', 'M', 5, 1, 2, ';'});
+            byte[] hello = new byte[8];
+            new DataInputStream(socket.getInputStream()).readFully(hello);
+            assertEquals(0, hello[0]);
+            assertEquals(5, hello[4]);
+            assertEquals("compression is accepted", 1, hello[5]);
+            assertEquals("binary codec is accepted", 2, hello[6]);
+            assertEquals(';', hello[7]);
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testOversizedFrameClosesOnlyItsConnection() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            socket.getOutputStream().write(new byte[]{0, 'M', 'C', 'M', 5, 0, 2, ';'});
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            in.readFully(new byte[8]);
+
+            // the length is rejected before a buffer of that size is allocated
+            new DataOutputStream(socket.getOutputStream()).writeInt(MessageCodecs.getMaxFrameSize() + 1);
+            assertEquals(-1, in.read());
+        }
+
+        sender.send(new MethodCallMessage(sender.getMyAddress(), "testMethod1"), address);
+        assertEquals("testMethod1", receiver.wReceive().getMethodName());
+    }
+
+    @Test(timeout = 1000)
+    public void testUnknownCodecIsAnsweredWithDefault() throws IOException {
+        NetworkAddress address = receiver.getMyAddress();
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            socket.getOutputStream().write(new byte[]{0, 'M', 'C', 'M', 5, 1, 99, ';'});
+            byte[] hello = new byte[8];
+            new DataInputStream(socket.getInputStream()).readFully(hello);
+            assertEquals(MessageCodecs.forName(MessageCodecs.DEFAULT).getId(), hello[6]);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testKeysOutliveTheirDictionary() {
+        Thread server = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = receiver.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                request.getParameters().forEach((key, value) -> reply.setParameter("result." + key, value));
+                receiver.reply(request, reply);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+
+        // more distinct keys than the dictionary holds, then the oldest ones again after they were evicted
+        for (int round = 0; round < 3; round++) {
+            for (int first = 0; first < 3000; first += 500) {
+                MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod" + first);
+                for (int i = first; i < first + 500; i++) {
+                    request.setParameter("arg0.field" + i, "value " + i);
+                }
+                MethodCallMessage reply = sender.call(request, receiver.getMyAddress());
+                assertEquals(500, reply.getParameters().size());
+                assertEquals("value " + first, reply.getParameter("result.arg0.field" + first));
+            }
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testDatagramIsReceivedWithoutReply() {
+        assertTrue(receiver.listenDatagrams());
+        MethodCallMessage message = new MethodCallMessage(sender.getMyAddress(), "testMethod9");
+        message.setParameter("arg0", "5");
+        sender.sendDatagram(message, receiver.getMyAddress());
+
+        MethodCallMessage received = receiver.wReceive();
+        assertEquals("testMethod9", received.getMethodName());
+        assertEquals("5", received.getParameter("arg0"));
+        assertTrue(received.isOneWay());
+    }
+
+    @Test
+    public void testDatagramsAreNotReceivedByDefault() throws IOException {
+        // the UDP port with the number of the manager's TCP port is still free
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.bind(new InetSocketAddress(receiver.getMyAddress().getPortNumber()));
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testLargeDatagramFallsBackToConnection() {
+        String value = String.join("", Collections.nCopies(4000, "x"));
+        MethodCallMessage message = new MethodCallMessage(sender.getMyAddress(), "testMethod2");
+        message.setParameter("arg0", value);
+        sender.sendDatagram(message, receiver.getMyAddress());
+
+        MethodCallMessage received = receiver.wReceive();
+        assertEquals(value, received.getParameter("arg0"));
+        assertTrue(received.isOneWay());
+    }
+
+    @Test(timeout = 2000)
+    public void testConcurrentRequestsReceiveTheirOwnReply() throws Exception {
+        assertRepliesAreNotMixedUp((message, address) -> sender.request(message, address));
+    }
+
+    @Test(timeout = 2000)
+    public void testConcurrentCallsOnOneConnectionReceiveTheirOwnReply() throws Exception {
+        assertRepliesAreNotMixedUp((message, address) -> sender.call(message, address));
+    }
+
+    @Test(timeout = 2000)
+    public void testRequestsInBothDirectionsAreNotTakenForReplies() throws Exception {
+        // both managers hand out call ID 1, each must receive the other's request and not take it as its reply
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<MethodCallMessage> fromSender = callers.submit(() ->
+                sender.request(new MethodCallMessage(sender.getMyAddress(), "testMethod1"), receiver.getMyAddress()));
+        Future<MethodCallMessage> fromReceiver = callers.submit(() ->
+                receiver.request(new MethodCallMessage(receiver.getMyAddress(), "testMethod2"), sender.getMyAddress()));
+
+        MethodCallMessage atReceiver = receiver.wReceive();
+        MethodCallMessage atSender = sender.wReceive();
+        assertEquals("testMethod1", atReceiver.getMethodName());
+        assertEquals("testMethod2", atSender.getMethodName());
+
+        receiver.reply(atReceiver, new MethodCallMessage(receiver.getMyAddress(), "result"));
+        sender.reply(atSender, new MethodCallMessage(sender.getMyAddress(), "result"));
+        assertEquals("result", fromSender.get().getMethodName());
+        assertEquals("result", fromReceiver.get().getMethodName());
+        callers.shutdown();
+    }
+
+    @Test(timeout = 3000)
+    public void testSlowPeerDoesNotHoldUpCallsToOthers() throws Exception {
+        Thread server = new Thread(() -> {
+            MethodCallMessage request = receiver.wReceive();
+            receiver.reply(request, new MethodCallMessage(receiver.getMyAddress(), "result"));
+        });
+        server.setDaemon(true);
+        server.start();
+
+        // accepts the connection but never answers the hello
+        try (ServerSocket silent = new ServerSocket(0)) {
+            Thread slowCall = new Thread(() -> sender.call(new MethodCallMessage(sender.getMyAddress(), "testMethod1"),
+                    new NetworkAddress("127.0.0.1", silent.getLocalPort())));
+            slowCall.setDaemon(true);
+            slowCall.start();
+            Socket accepted = silent.accept();
+
+            MethodCallMessage reply = sender.call(new MethodCallMessage(sender.getMyAddress(), "testMethod1"), receiver.getMyAddress());
+            assertEquals("result", reply.getMethodName());
+            accepted.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPeerThatDoesNotAnswerTheHelloIsNotDialedInText() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0)) {
+            List<Socket> accepted = Collections.synchronizedList(new ArrayList<>());
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) accepted.add(silent.accept());
+                } catch (IOException ignored) {
+                    // the server socket was closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            assertNull(sender.call(new MethodCallMessage(sender.getMyAddress(), "testMethod1"),
+                    new NetworkAddress("127.0.0.1", silent.getLocalPort())));
+            assertEquals(1, accepted.size());
+        }
+    }
+
+    private void assertRepliesAreNotMixedUp(BiFunction<MethodCallMessage, NetworkAddress, MethodCallMessage> call) throws Exception {
+        int calls = 8;
+
+        // answer all requests in reverse order of arrival
+        Thread server = new Thread(() -> {
+            List<MethodCallMessage> requests = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                requests.add(receiver.wReceive());
+            }
+            for (int i = calls - 1; i >= 0; i--) {
+                MethodCallMessage reply = new MethodCallMessage(receiver.getMyAddress(), "result");
+                reply.setParameter("result", requests.get(i).getParameter("arg0"));
+                receiver.reply(requests.get(i), reply);
+            }
+        });
+        server.start();
+
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            String value = "caller " + i;
+            results.add(callers.submit(() -> {
+                MethodCallMessage request = new MethodCallMessage(sender.getMyAddress(), "testMethod2");
+                request.setParameter("arg0", value);
+                return call.apply(request, receiver.getMyAddress()).getParameter("result");
+            }));
+        }
+        for (int i = 0; i < calls; i++) {
+            assertEquals("caller " + i, results.get(i).get());
+        }
+        callers.shutdown();
+    }
+}
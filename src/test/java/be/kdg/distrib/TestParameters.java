@@ -0,0 +1,82 @@
+package be.kdg.distrib;
+
+import be.kdg.distrib.communication.ParameterValue;
+import be.kdg.distrib.communication.Parameters;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestParameters {
+
+    @Test
+    public void testBuilderSortsAndKeepsLastValue() {
+        Parameters parameters = Parameters.builder()
+                .add("arg1", ParameterValue.of(1))
+                .add("arg0.name", ParameterValue.of("first"))
+                .add("arg0.age", ParameterValue.of(42))
+                .add("arg0.name", ParameterValue.of("second"))
+                .build();
+
+        assertEquals(3, parameters.size());
+        assertEquals("arg0.age", parameters.getKey(0));
+        assertEquals("arg0.name", parameters.getKey(1));
+        assertEquals("arg1", parameters.getKey(2));
+        assertEquals("second", parameters.get("arg0.name").toString());
+        assertNull(parameters.get("arg0"));
+    }
+
+    @Test
+    public void testPutInAnyOrderStaysSorted() {
+        Parameters parameters = new Parameters();
+        for (String key : new String[]{"c", "a", "d", "b", "a"}) {
+            parameters.put(key, ParameterValue.of(key));
+        }
+
+        assertEquals(4, parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            assertEquals(String.valueOf((char) ('a' + i)), parameters.getKey(i));
+        }
+    }
+
+    @Test
+    public void testStartingWithFindsOnlyTheRange() {
+        Parameters.Builder builder = Parameters.builder();
+        for (int i = 0; i < 500; i++) {
+            builder.add("arg" + (i % 5) + ".field" + i, ParameterValue.of(i));
+        }
+        Parameters parameters = builder.build();
+
+        Parameters range = parameters.startingWith("arg3.");
+        assertEquals(100, range.size());
+        for (int i = 0; i < range.size(); i++) {
+            assertEquals(3, range.getValue(i).asInt() % 5);
+        }
+        assertEquals(0, parameters.startingWith("arg5").size());
+        assertEquals(1, range.startingWith("arg3.field403").size());
+    }
+
+    @Test
+    public void testBuilderKeepsLastValueAmongManyParameters() {
+        Parameters.Builder builder = Parameters.builder();
+        for (int i = 0; i < 300; i++) {
+            // every name is added three times, in descending order
+            builder.add("arg" + (99 - i % 100), ParameterValue.of(i));
+        }
+        Parameters parameters = builder.build();
+
+        assertEquals(100, parameters.size());
+        for (int i = 1; i < parameters.size(); i++) {
+            assertEquals(true, parameters.getKey(i - 1).compareTo(parameters.getKey(i)) < 0);
+        }
+        assertEquals(299, parameters.get("arg0").asInt());
+        assertEquals(200, parameters.get("arg99").asInt());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRangeCanNotBeChanged() {
+        Parameters parameters = new Parameters();
+        parameters.put("arg0", ParameterValue.of(1));
+        parameters.startingWith("arg").put("arg1", ParameterValue.of(2));
+    }
+}
@@ -11,7 +11,9 @@ import org.junit.Test;
 
 import static junit.framework.TestCase.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestSkeletonFactory {
     private TestImplementation testImplementation;
@@ -301,4 +303,85 @@ public class TestSkeletonFactory {
         assertEquals("U", reply.getParameter("result.gender"));
         assertEquals("true", reply.getParameter("result.deleted"));
     }
+
+    @Test(timeout = 1000)
+    public void testInterfaceParameterOnlyDecodesWhatIsRead() {
+        Registry registry = new Registry();
+        Skeleton registrySkeleton = (Skeleton) SkeletonFactory.createSkeleton(registry);
+
+        // the age is never read for this call, so it is never parsed
+        MethodCallMessage message = new MethodCallMessage(myAddress, "nameOf");
+        message.setParameter("arg0.name", "lazy");
+        message.setParameter("arg0.age", "no integer");
+        message.setParameter("arg0.address.city", "Antwerpen");
+        registrySkeleton.handleRequest(message);
+        assertEquals("lazy", messageManager.wReceive().getParameter("result"));
+
+        message = new MethodCallMessage(myAddress, "register");
+        message.setParameter("arg0.name", "minor");
+        message.setParameter("arg0.age", "12");
+        message.setParameter("arg0.address.city", "Gent");
+        registrySkeleton.handleRequest(message);
+        messageManager.wReceive();
+        assertNull(registry.city);
+
+        message.setParameter("arg0.age", "42");
+        registrySkeleton.handleRequest(message);
+        messageManager.wReceive();
+        assertEquals("Gent", registry.city);
+    }
+
+    @Test
+    public void testMissingConstructorIsReportedOnEveryCall() {
+        Skeleton plotterSkeleton = (Skeleton) SkeletonFactory.createSkeleton(new Plotter());
+
+        // the constructor is looked up once, its absence must still fail every call
+        for (int i = 0; i < 2; i++) {
+            MethodCallMessage message = new MethodCallMessage(myAddress, "xOf");
+            message.setParameter("arg0.x", "3");
+            try {
+                plotterSkeleton.handleRequest(message);
+                fail("a point can not be created without a no-arg constructor");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("Point"));
+            }
+        }
+    }
+
+    public static class Point {
+        private final int x;
+
+        public Point(int x) {
+            this.x = x;
+        }
+    }
+
+    public static class Plotter {
+        public int xOf(Point point) {
+            return point.x;
+        }
+    }
+
+    public interface Person {
+        String getName();
+        int getAge();
+        Address getAddress();
+    }
+
+    public interface Address {
+        String city();
+    }
+
+    public static class Registry {
+        private String city;
+
+        public String nameOf(Person person) {
+            return person.getName();
+        }
+
+        public void register(Person person) {
+            if (person.getAge() < 18) return;
+            this.city = person.getAddress().city();
+        }
+    }
 }
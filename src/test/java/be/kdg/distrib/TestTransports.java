@@ -0,0 +1,219 @@
+package be.kdg.distrib;
+
+import be.kdg.distrib.communication.SharedMemoryChannel;
+import be.kdg.distrib.skeletonFactory.Skeleton;
+import be.kdg.distrib.skeletonFactory.SkeletonFactory;
+import be.kdg.distrib.stubFactory.FireAndForget;
+import be.kdg.distrib.stubFactory.LocalMode;
+import be.kdg.distrib.stubFactory.ReplyMode;
+import be.kdg.distrib.stubFactory.StubFactory;
+import be.kdg.distrib.testclasses.TestImplementation;
+import be.kdg.distrib.testclasses.TestInterface2;
+import be.kdg.distrib.testclasses.TestObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestTransports {
+    private TestImplementation testImplementation;
+
+    @Before
+    public void setup() {
+        testImplementation = new TestImplementation();
+    }
+
+    @Test(timeout = 2000)
+    public void testUnixDomainSocket() throws IOException {
+        Path socketPath = Files.createTempDirectory("distrib").resolve("skeleton.sock");
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation, socketPath);
+        skeleton.run();
+        assertTrue(skeleton.getAddress().isUnixDomain());
+
+        TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class, socketPath);
+        assertFullBlownCall(stub);
+    }
+
+    @Test(timeout = 2000)
+    public void testInProcessMessage() {
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation);
+        skeleton.run();
+        TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class,
+                "127.0.0.1", skeleton.getAddress().getPortNumber(), ReplyMode.ORIGINATOR, LocalMode.MESSAGE);
+        assertFullBlownCall(stub);
+    }
+
+    @Test(timeout = 2000)
+    public void testInProcessDirect() {
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation);
+        skeleton.run();
+        TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class,
+                "127.0.0.1", skeleton.getAddress().getPortNumber(), ReplyMode.ORIGINATOR, LocalMode.DIRECT);
+        assertFullBlownCall(stub);
+    }
+
+    @Test(timeout = 2000)
+    public void testSharedMemory() throws IOException {
+        Path file = Files.createTempDirectory("distrib").resolve("skeleton.shm");
+        Skeleton skeleton = SkeletonFactory.createSharedMemorySkeleton(testImplementation, file);
+        skeleton.run();
+
+        TestInterface2 stub = (TestInterface2) StubFactory.createSharedMemoryStub(TestInterface2.class, file);
+        assertFullBlownCall(stub);
+    }
+
+    @Test
+    public void testSharedMemoryStubDoesNotCreateMissingFile() throws IOException {
+        Path file = Files.createTempDirectory("distrib").resolve("missing.shm");
+        try {
+            SharedMemoryChannel.open(file);
+            fail("Expected the missing file to be reported");
+        } catch (IOException e) {
+            assertFalse(Files.exists(file));
+        }
+    }
+
+    @Test
+    public void testSharedMemoryStubsOfOneJvmShareTheChannel() throws IOException {
+        Path file = Files.createTempDirectory("distrib").resolve("shared.shm");
+        Skeleton skeleton = SkeletonFactory.createSharedMemorySkeleton(testImplementation, file);
+        skeleton.run();
+
+        assertSame(SharedMemoryChannel.open(file), SharedMemoryChannel.open(file));
+        TestInterface2 first = (TestInterface2) StubFactory.createSharedMemoryStub(TestInterface2.class, file);
+        TestInterface2 second = (TestInterface2) StubFactory.createSharedMemoryStub(TestInterface2.class, file);
+        assertFullBlownCall(first);
+        assertFullBlownCall(second);
+    }
+
+    @Test
+    public void testSharedMemoryFileLockedByAnotherStubIsNotOpened() throws IOException {
+        Path file = Files.createTempDirectory("distrib").resolve("locked.shm");
+        Skeleton skeleton = SkeletonFactory.createSharedMemorySkeleton(testImplementation, file);
+        skeleton.run();
+
+        // stands in for a stub in another process, it locks the whole header
+        try (FileChannel other = FileChannel.open(file, StandardOpenOption.WRITE); FileLock ignored = other.lock(0, 128, false)) {
+            SharedMemoryChannel.open(file);
+            fail("Expected the locked file to be reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("another stub"));
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testFireAndForget() throws InterruptedException {
+        Counter counter = new Counter();
+        Skeleton skeleton = SkeletonFactory.createSkeleton(counter);
+        skeleton.run();
+        Notifications stub = (Notifications) StubFactory.createStub(Notifications.class,
+                "127.0.0.1", skeleton.getAddress().getPortNumber(), ReplyMode.ORIGINATOR, LocalMode.REMOTE);
+
+        stub.add(3);
+        stub.add(4);
+        assertTrue(counter.added.await(1, TimeUnit.SECONDS));
+        assertEquals(7, counter.total.get());
+    }
+
+    @Test(timeout = 2000)
+    public void testTransportsFromUri() throws IOException {
+        Path directory = Files.createTempDirectory("distrib");
+        String[] addresses = {
+                "tcp://0.0.0.0:0",
+                "unix:" + directory.resolve("skeleton.sock"),
+                "inproc://testTransportsFromUri",
+                "shm:" + directory.resolve("skeleton.shm")
+        };
+
+        for (String address : addresses) {
+            Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation, URI.create(address));
+            skeleton.run();
+            assertEquals(URI.create(address).getScheme(), skeleton.getUri().getScheme());
+
+            TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class, skeleton.getUri());
+            assertFullBlownCall(stub);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void testTcpSkeletonListensOnTheHostOfItsUri() {
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation, URI.create("tcp://127.0.0.1:0"));
+        skeleton.run();
+        assertEquals("127.0.0.1", skeleton.getUri().getHost());
+        assertTrue(skeleton.getUri().getPort() > 0);
+
+        TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class, skeleton.getUri());
+        assertFullBlownCall(stub);
+    }
+
+    @Test
+    public void testInProcessSkeletonOpensNoSocket() {
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation, URI.create("inproc://testInProcessSkeletonOpensNoSocket"));
+        assertEquals(0, skeleton.getAddress().getPortNumber());
+    }
+
+    @Test
+    public void testInProcessStubStartsNoServer() {
+        URI address = URI.create("inproc://testInProcessStubStartsNoServer");
+        Skeleton skeleton = SkeletonFactory.createSkeleton(testImplementation, address);
+        skeleton.run();
+        long threads = countServerThreads();
+
+        TestInterface2 stub = (TestInterface2) StubFactory.createStub(TestInterface2.class, address);
+        assertFullBlownCall(stub);
+        assertEquals(threads, countServerThreads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownScheme() {
+        StubFactory.createStub(TestInterface2.class, URI.create("carrier-pigeon://home"));
+    }
+
+    private static long countServerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("MessageServer-io-"))
+                .count();
+    }
+
+    private void assertFullBlownCall(TestInterface2 stub) {
+        TestObject result = stub.fullBlownTestMethod("bla", new TestObject("Voornaam Naam", 245, 'U', true), -489, false);
+        assertEquals("bla", result.getName());
+        assertEquals(-489, result.getAge());
+        assertEquals('U', result.getGender());
+        assertTrue(result.isDeleted());
+
+        testImplementation.setMethod6ReturnValue(42);
+        assertEquals(42, stub.testMethod6());
+    }
+
+    public interface Notifications {
+        @FireAndForget
+        void add(int amount);
+    }
+
+    public static class Counter implements Notifications {
+        private final AtomicInteger total = new AtomicInteger();
+        private final CountDownLatch added = new CountDownLatch(2);
+
+        @Override
+        public void add(int amount) {
+            total.addAndGet(amount);
+            added.countDown();
+        }
+    }
+}
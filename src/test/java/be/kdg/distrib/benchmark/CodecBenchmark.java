@@ -0,0 +1,99 @@
+package be.kdg.distrib.benchmark;
+
+import be.kdg.distrib.communication.ConnectionPool;
+import be.kdg.distrib.communication.FrameCodec;
+import be.kdg.distrib.communication.MessageCodecs;
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.MethodCallMessage;
+import be.kdg.distrib.communication.NetworkAddress;
+import be.kdg.distrib.communication.WireFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the codecs on the same workload: the size of the frame of a typical call,
+ * and how many of these calls per second a few callers complete over one loopback connection.
+ * <p>
+ * Run with: {@code mvn test-compile && java -cp target/classes:target/test-classes
+ * be.kdg.distrib.benchmark.CodecBenchmark}
+ */
+public class CodecBenchmark {
+    private static final long DURATION_MILLIS = 3000;
+    private static final int CALLERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        MessageManager server = new MessageManager();
+        Thread echo = new Thread(() -> {
+            while (true) {
+                MethodCallMessage request = server.wReceive();
+                MethodCallMessage reply = new MethodCallMessage(server.getMyAddress(), "result");
+                request.getParameterValues().forEach((key, value) -> reply.setParameter("result." + key, value));
+                server.reply(request, reply);
+            }
+        });
+        echo.setDaemon(true);
+        echo.start();
+
+        System.out.printf("%-10s %15s %15s%n", "codec", "frame bytes", "calls/s");
+        for (String codec : MessageCodecs.getNames()) {
+            int frameBytes = frameSize(codec, server.getMyAddress());
+            double rate = measure(codec, server.getMyAddress());
+            System.out.printf("%-10s %15d %15.0f%n", codec, frameBytes, rate);
+        }
+        System.exit(0);
+    }
+
+    private static MethodCallMessage workload(NetworkAddress originator) {
+        MethodCallMessage message = new MethodCallMessage(originator, "fullBlownTestMethod");
+        message.setParameter("arg0", "a string argument");
+        message.setParameter("arg1.name", "Joe");
+        message.setParameter("arg1.age", 42);
+        message.setParameter("arg1.gender", 'm');
+        message.setParameter("arg1.deleted", false);
+        message.setParameter("arg2", 1L << 40);
+        message.setParameter("arg3", 3.14);
+        return message;
+    }
+
+    private static int frameSize(String codec, NetworkAddress originator) throws IOException {
+        FrameCodec frames = MessageCodecs.forName(codec).open(false);
+        List<ByteBuffer> out = new ArrayList<>();
+        frames.encode(workload(originator), out);
+        return out.stream().mapToInt(ByteBuffer::remaining).sum();
+    }
+
+    private static double measure(String codec, NetworkAddress server) throws InterruptedException {
+        MessageManager client = new MessageManager(new ConnectionPool(1, 60_000, WireFormat.BINARY, codec));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+
+        Thread[] callers = new Thread[CALLERS];
+        for (int i = 0; i < CALLERS; i++) {
+            callers[i] = new Thread(() -> {
+                while (running.get()) {
+                    if (client.call(workload(client.getMyAddress()), server) != null) {
+                        completed.incrementAndGet();
+                    }
+                }
+            });
+            callers[i].start();
+        }
+
+        // warm up before measuring
+        Thread.sleep(500);
+        long start = completed.get();
+        Thread.sleep(DURATION_MILLIS);
+        long end = completed.get();
+
+        running.set(false);
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        return (end - start) * 1000.0 / DURATION_MILLIS;
+    }
+}
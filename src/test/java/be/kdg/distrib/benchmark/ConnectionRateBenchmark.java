@@ -0,0 +1,89 @@
+package be.kdg.distrib.benchmark;
+
+import be.kdg.distrib.communication.ConnectionPool;
+import be.kdg.distrib.communication.MessageManager;
+import be.kdg.distrib.communication.NetworkAddress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many new connections per second a MessageManager can accept and read,
+ * with one shared server socket and with one SO_REUSEPORT socket per I/O thread.
+ * Every client opens a new connection for each message, like senders without a connection pool.
+ * <p>
+ * Run with: {@code mvn test-compile && java -cp target/classes:target/test-classes
+ * be.kdg.distrib.benchmark.ConnectionRateBenchmark}
+ */
+public class ConnectionRateBenchmark {
+    private static final long DURATION_MILLIS = 3000;
+    private static final byte[] MESSAGE = ("MethodCallMessage\n" +
+            "originator.IP \"127.0.0.1\"\n" +
+            "originator.port \"1\"\n" +
+            "methodName testMethod1\n" +
+            ";\n").getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-10s %-10s %15s%n", "threads", "reusePort", "connections/s");
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            for (boolean reusePort : new boolean[]{false, true}) {
+                double rate = measure(threads, reusePort, 2 * cores);
+                System.out.printf("%-10d %-10s %15.0f%n", threads, reusePort, rate);
+            }
+        }
+    }
+
+    private static double measure(int threads, boolean reusePort, int clients) throws InterruptedException {
+        MessageManager server = new MessageManager(new ConnectionPool(), threads, reusePort);
+        NetworkAddress address = new NetworkAddress("127.0.0.1", server.getMyAddress().getPortNumber());
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong received = new AtomicLong();
+
+        Thread drain = new Thread(() -> {
+            while (running.get()) {
+                server.wReceive();
+                received.incrementAndGet();
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+
+        Thread[] senders = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            senders[i] = new Thread(() -> {
+                while (running.get()) {
+                    connectAndSend(address);
+                }
+            });
+            senders[i].start();
+        }
+
+        // warm up before measuring
+        Thread.sleep(500);
+        long start = received.get();
+        Thread.sleep(DURATION_MILLIS);
+        long end = received.get();
+
+        running.set(false);
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        return (end - start) * 1000.0 / DURATION_MILLIS;
+    }
+
+    private static void connectAndSend(NetworkAddress address) {
+        try (Socket socket = new Socket(address.getIpAddress(), address.getPortNumber())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(MESSAGE);
+            out.flush();
+        } catch (IOException e) {
+            // ephemeral ports may run out under this load, the next attempt simply retries
+        }
+    }
+}
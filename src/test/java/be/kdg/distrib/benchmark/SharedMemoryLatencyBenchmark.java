@@ -0,0 +1,69 @@
+package be.kdg.distrib.benchmark;
+
+import be.kdg.distrib.skeletonFactory.Skeleton;
+import be.kdg.distrib.skeletonFactory.SkeletonFactory;
+import be.kdg.distrib.stubFactory.LocalMode;
+import be.kdg.distrib.stubFactory.ReplyMode;
+import be.kdg.distrib.stubFactory.StubFactory;
+import be.kdg.distrib.testclasses.TestImplementation;
+import be.kdg.distrib.testclasses.TestInterface;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures the round trip latency of a call to a skeleton on the same host,
+ * through a shared memory channel and through a TCP connection on the loopback interface.
+ * <p>
+ * Run with: {@code mvn test-compile && java -cp target/classes:target/test-classes
+ * be.kdg.distrib.benchmark.SharedMemoryLatencyBenchmark}
+ */
+public class SharedMemoryLatencyBenchmark {
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 50_000;
+
+    public static void main(String[] args) throws IOException {
+        TestImplementation implementation = new TestImplementation();
+
+        Path file = Files.createTempDirectory("distrib").resolve("benchmark.shm");
+        Skeleton shmSkeleton = SkeletonFactory.createSharedMemorySkeleton(implementation, file);
+        shmSkeleton.run();
+        TestInterface shmStub = (TestInterface) StubFactory.createSharedMemoryStub(TestInterface.class, file);
+
+        // the remote local mode keeps the stub from calling the skeleton in this JVM directly
+        Skeleton tcpSkeleton = SkeletonFactory.createSkeleton(implementation);
+        tcpSkeleton.run();
+        TestInterface tcpStub = (TestInterface) StubFactory.createStub(TestInterface.class, "127.0.0.1",
+                tcpSkeleton.getAddress().getPortNumber(), ReplyMode.CONNECTION, LocalMode.REMOTE);
+
+        System.out.printf("%-10s %12s %12s %12s%n", "transport", "avg (us)", "p50 (us)", "p99 (us)");
+        print("shm", measure(shmStub));
+        print("tcp", measure(tcpStub));
+        System.exit(0);
+    }
+
+    private static long[] measure(TestInterface stub) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            stub.testMethod9(i);
+        }
+
+        long[] latencies = new long[MEASURED_CALLS];
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            long start = System.nanoTime();
+            stub.testMethod9(i);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static void print(String transport, long[] latencies) {
+        double average = Arrays.stream(latencies).average().orElse(0);
+        System.out.printf("%-10s %12.1f %12.1f %12.1f%n", transport,
+                average / 1000,
+                latencies[latencies.length / 2] / 1000.0,
+                latencies[latencies.length * 99 / 100] / 1000.0);
+    }
+}
@@ -1,5 +1,8 @@
 package be.kdg.distrib.testclasses;
 
+import be.kdg.distrib.codec.Remote;
+
+@Remote
 public interface TestInterface {
     void testMethod1();
     void testMethod2(String s);